@@ -0,0 +1,123 @@
+package spcsim.impl;
+
+/* Author: Kent Fukuda
+ * Description: Direct summation gravity kernel that evaluates several bodies per instruction with the vector api
+ * Created: 10-16-26
+ * Status: utility class, finished
+ * Dependencies: GravityKernel, ParticleStore, jdk.incubator.vector
+ * Licensed under GNU v3, see src/spcsim/SpaceSim.java for more details
+ */
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+//kept in its own source root built only with the module, and loaded by name from GravityKernel.create so the program runs without it
+final class VectorGravityKernel extends GravityKernel {
+    
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Float> SINGLE_SPECIES = FloatVector.SPECIES_PREFERRED;
+    //vector steps summed in float before the lanes are added to the double sums
+    private static final int SINGLE_CHUNK = 64;
+    
+    //constructor
+    VectorGravityKernel() { }
+    
+    
+    //overridden kernel methods
+    @Override
+    public void accelerate( ParticleStore store, int from, int to, double pull, ContactListener contacts ) {
+        int size = store.size();
+        int lanes = SPECIES.length(), bound = SPECIES.loopBound( size );
+        double[] xPos = store.xPos, yPos = store.yPos, mass = store.mass, radius = store.radius;
+        for( int i = from; i < to; i++ ) {
+            double px = xPos[i], py = yPos[i], pr = radius[i];
+            DoubleVector xSum = DoubleVector.zero( SPECIES ), ySum = DoubleVector.zero( SPECIES );
+            int j = 0;
+            for( ; j < bound; j += lanes ) {
+                DoubleVector xDiff = DoubleVector.fromArray( SPECIES, xPos, j ).neg().add( px );
+                DoubleVector yDiff = DoubleVector.fromArray( SPECIES, yPos, j ).neg().add( py );
+                DoubleVector distSq = xDiff.mul( xDiff ).add( yDiff.mul( yDiff ) );
+                DoubleVector dist = distSq.sqrt();
+                //the body itself always counts as touching, so it is masked out with the contacts
+                VectorMask<Double> touch = dist.compare( VectorOperators.LE, DoubleVector.fromArray( SPECIES, radius, j ).add( pr ) );
+                if( touch.anyTrue() )
+                    for( int lane = touch.firstTrue(); lane < lanes; lane++ )
+                        if( touch.laneIsSet( lane ) && i < j + lane )
+                            contacts.touch( i, j + lane );
+                DoubleVector force = DoubleVector.fromArray( SPECIES, mass, j ).div( distSq.mul( dist ) );
+                force = force.blend( 0, touch );
+                xSum = xDiff.fma( force, xSum );
+                ySum = yDiff.fma( force, ySum );
+            }
+            double ax = xSum.reduceLanes( VectorOperators.ADD ), ay = ySum.reduceLanes( VectorOperators.ADD );
+            for( ; j < size; j++ ) {
+                double xDiff = px - xPos[j];
+                double yDiff = py - yPos[j];
+                double distSq = xDiff * xDiff + yDiff * yDiff;
+                double dist = Math.sqrt( distSq );
+                if( dist <= pr + radius[j] ) {
+                    if( i < j )
+                        contacts.touch( i, j );
+                } else {
+                    double force = mass[j] / ( distSq * dist );
+                    ax += force * xDiff;
+                    ay += force * yDiff;
+                }
+            }
+            store.xAccel[i] += pull * ax;
+            store.yAccel[i] += pull * ay;
+        }
+    }
+    
+    @Override
+    public void accelerateSingle( ParticleStore store, int from, int to, double pull, ContactListener contacts ) {
+        int size = store.size();
+        int lanes = SINGLE_SPECIES.length(), bound = SINGLE_SPECIES.loopBound( size );
+        float[] xPos = store.xSingle, yPos = store.ySingle, mass = store.massSingle, radius = store.radiusSingle;
+        for( int i = from; i < to; i++ ) {
+            float px = xPos[i], py = yPos[i], pr = radius[i];
+            double ax = 0, ay = 0;
+            int j = 0;
+            while( j < bound ) {
+                FloatVector xSum = FloatVector.zero( SINGLE_SPECIES ), ySum = FloatVector.zero( SINGLE_SPECIES );
+                int end = Math.min( bound, j + SINGLE_CHUNK * lanes );
+                for( ; j < end; j += lanes ) {
+                    FloatVector xDiff = FloatVector.fromArray( SINGLE_SPECIES, xPos, j ).neg().add( px );
+                    FloatVector yDiff = FloatVector.fromArray( SINGLE_SPECIES, yPos, j ).neg().add( py );
+                    FloatVector distSq = xDiff.mul( xDiff ).add( yDiff.mul( yDiff ) );
+                    FloatVector dist = distSq.sqrt();
+                    VectorMask<Float> touch = dist.compare( VectorOperators.LE, FloatVector.fromArray( SINGLE_SPECIES, radius, j ).add( pr ) );
+                    if( touch.anyTrue() )
+                        for( int lane = touch.firstTrue(); lane < lanes; lane++ )
+                            if( touch.laneIsSet( lane ) && i < j + lane )
+                                contacts.touch( i, j + lane );
+                    FloatVector force = FloatVector.fromArray( SINGLE_SPECIES, mass, j ).div( distSq.mul( dist ) );
+                    force = force.blend( 0, touch );
+                    xSum = xDiff.fma( force, xSum );
+                    ySum = yDiff.fma( force, ySum );
+                }
+                ax += xSum.reduceLanes( VectorOperators.ADD );
+                ay += ySum.reduceLanes( VectorOperators.ADD );
+            }
+            for( ; j < size; j++ ) {
+                float xDiff = px - xPos[j];
+                float yDiff = py - yPos[j];
+                float distSq = xDiff * xDiff + yDiff * yDiff;
+                float dist = (float)Math.sqrt( distSq );
+                if( dist <= pr + radius[j] ) {
+                    if( i < j )
+                        contacts.touch( i, j );
+                } else {
+                    float force = mass[j] / ( distSq * dist );
+                    ax += force * xDiff;
+                    ay += force * yDiff;
+                }
+            }
+            store.xAccel[i] += pull * ax;
+            store.yAccel[i] += pull * ay;
+        }
+    }
+}
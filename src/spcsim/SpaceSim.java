@@ -22,7 +22,7 @@ package spcsim;
  * Description: Main class for Space Simulator Program
  * Created: 7-7-21
  * Status: main class, finished
- * Dependencies: MainFrame, Logger, SimObject
+ * Dependencies: MainFrame, Ensemble, Logger, SimObject
  * Licensed under GNU v3, see src/spcsim/SpaceSim.java for more details
  */
 
@@ -34,6 +34,8 @@ package spcsim;
  * Licensed under GNU v3, see src/spcsim/SpaceSim.java for more details
  */
 
+import java.util.Arrays;
+import spcsim.impl.Ensemble;
 import spcsim.impl.MainFrame;
 import spcsim.base.Logger;
 import spcsim.base.SimObject;
@@ -47,12 +49,34 @@ public class SpaceSim {
     
     //main function. program entry
     public static void main( String[] args ) {
+        //an ensemble or a domain worker runs without any window, so awt must not look for a display
+        boolean ensemble = args.length > 0 && args[0].equals( "--ensemble" );
+        boolean worker = args.length > 0 && args[0].equals( "--domain-worker" );
+        if( ensemble || worker )
+            System.setProperty( "java.awt.headless", "true" );
         Logger.logMessage( "Starting Space Simulation Program" );
         SimObject.ensureLoaded( spcsim.grav2d.Simple.class );
         SimObject.ensureLoaded( spcsim.grav2d.MultiThread.class );
         SimObject.ensureLoaded( spcsim.grav2d.EnsureStable.class );
+        SimObject.ensureLoaded( spcsim.grav2d.BarnesHut.class );
+        SimObject.ensureLoaded( spcsim.grav2d.FastMultipole.class );
+        SimObject.ensureLoaded( spcsim.grav2d.Vectorized.class );
+        SimObject.ensureLoaded( spcsim.grav2d.Hermite.class );
+        SimObject.ensureLoaded( spcsim.grav2d.BlockStep.class );
+        SimObject.ensureLoaded( spcsim.grav2d.Regularized.class );
+        SimObject.ensureLoaded( spcsim.grav2d.Auto.class );
         SimObject.ensureLoaded( spcsim.part2d.EnsureStable.class );
         SimObject.ensureLoaded( spcsim.part2d.Simple.class );
+        SimObject.ensureLoaded( spcsim.part2d.ParticleMesh.class );
+        SimObject.ensureLoaded( spcsim.part2d.P3M.class );
+        SimObject.ensureLoaded( spcsim.part2d.Vectorized.class );
+        SimObject.ensureLoaded( spcsim.part2d.NeighborList.class );
+        SimObject.ensureLoaded( spcsim.part2d.Auto.class );
+        SimObject.ensureLoaded( spcsim.part2d.Distributed.class );
+        if( ensemble )
+            System.exit( Ensemble.run( Arrays.copyOfRange( args, 1, args.length ) ) ? 0 : 1 );
+        if( worker )
+            System.exit( spcsim.part2d.DomainWorker.run( Arrays.copyOfRange( args, 1, args.length ) ) ? 0 : 1 );
         Logger.logMessage( "Initializing MainFrame" );
         var frame = new MainFrame();
         frame.readConfig();
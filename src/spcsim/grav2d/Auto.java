@@ -0,0 +1,55 @@
+package spcsim.grav2d;
+
+/* Author: Kent Fukuda
+ * Description: Implementation of the Gravity2D simulation environment that switches to the backend calibrated fastest for the number of bodies
+ * Created: 10-16-26
+ * Status: environment class, finished
+ * Dependencies: SimObject, Gravity2D, SpaceObject2D, Calibration, AutoBackends
+ * Licensed under GNU v3, see src/spcsim/SpaceSim.java for more details
+ */
+
+import java.lang.invoke.MethodHandles;
+import spcsim.impl.AutoBackends;
+import spcsim.impl.MainFrame;
+import spcsim.impl.Calibration;
+import spcsim.base.EditPane;
+import spcsim.base.SimObject;
+
+public final class Auto extends Gravity2D {
+    //serialversionuid
+    public static final long serialVersionUID = SimObject.registerParticleClass( MethodHandles.lookup(), "GRZDAU" );
+    //timings shared by every auto environment, measured by the first one that runs
+    private static final Calibration.Shared CALIBRATION = new Calibration.Shared();
+    
+    private double theta;
+    private transient final AutoBackends backends;
+    
+    //private constructor
+    private Auto() {
+        theta = 0.5;
+        backends = new AutoBackends( CALIBRATION, SpaceObject2D::new );
+    }
+    
+    //overridden gui method to add tree and calibration settings
+    @Override
+    protected void generateGUI( EditPane editPane, MainFrame application ) {
+        super.generateGUI( editPane, application );
+        super.generateIntegratorGUI( editPane );
+        editPane.addValueMenuItem( EditPane.CONTROL_TYPE, "Opening Angle", "Set Opening Angle", () -> theta, val -> {
+                if( val < 0 )
+                    throw new IllegalArgumentException( "Opening angle must not be negative" );
+                theta = val;
+            } );
+        backends.generateGUI( editPane );
+    }
+    
+    //implemented simulation method
+    @Override
+    protected void simulate() {
+        store.load( particles );
+        int backend = backends.choose( store.size(), SpaceObject2D.OPT_GRAVITY_PULL, theta, deterministic );
+        super.integrate( () -> backends.forces( backend, store, SpaceObject2D.OPT_GRAVITY_PULL, theta, deterministic, super::addContact ) );
+        store.save( particles );
+        super.updateContacts();
+    }
+}
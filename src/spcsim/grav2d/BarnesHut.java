@@ -0,0 +1,74 @@
+package spcsim.grav2d;
+
+/* Author: Kent Fukuda
+ * Description: Implementation of the Gravity2D simulation environment that approximates distant gravity with a Barnes-Hut quadtree
+ * Created: 10-16-26
+ * Status: environment class, finished
+ * Dependencies: SimObject, Gravity2D, SpaceObject2D, QuadTree
+ * Licensed under GNU v3, see src/spcsim/SpaceSim.java for more details
+ */
+
+import java.lang.invoke.MethodHandles;
+import spcsim.impl.MainFrame;
+import spcsim.impl.QuadTree;
+import spcsim.base.EditPane;
+import spcsim.base.SimObject;
+
+public final class BarnesHut extends Gravity2D {
+    //serialversionuid
+    public static final long serialVersionUID = SimObject.registerParticleClass( MethodHandles.lookup(), "GRZDBH" );
+    
+    private double theta;
+    private transient final QuadTree tree;
+    private transient int[] order;
+    
+    //private constructor
+    private BarnesHut() {
+        theta = 0.5;
+        reorderInterval = 64;
+        tree = new QuadTree( 8 );
+        order = new int[0];
+    }
+    
+    //overridden gui method to add opening angle settings
+    @Override
+    protected void generateGUI( EditPane editPane, MainFrame application ) {
+        super.generateGUI( editPane, application );
+        super.generateIntegratorGUI( editPane );
+        super.generateReorderGUI( editPane );
+        editPane.addValueMenuItem( EditPane.CONTROL_TYPE, "Opening Angle", "Set Opening Angle", () -> theta, val -> {
+                if( val < 0 )
+                    throw new IllegalArgumentException( "Opening angle must not be negative" );
+                theta = val;
+            } );
+    }
+    
+    //implemented simulation method
+    @Override
+    protected void simulate() {
+        store.load( particles );
+        super.integrate( this::calculateForces );
+        store.save( particles );
+        super.findContacts();
+        super.updateContacts();
+    }
+    
+    
+    //private utility methods
+    //calculates the gravity on every body of the store at its current position
+    private void calculateForces() {
+        int size = store.size();
+        if( order.length < size )
+            order = new int[ Math.max( size, order.length * 2 ) ];
+        tree.update( size, store.xPos, store.yPos, store.mass, store.radius );
+        tree.bodyOrder( order );
+        double[] accel = new double[2];
+        //walks bodies in tree order so consecutive walks touch the same nodes
+        for( int i = 0; i < size; i++ ) {
+            int index = order[i];
+            tree.gravity( index, theta, SpaceObject2D.OPT_GRAVITY_PULL, accel, null );
+            store.xAccel[index] = accel[0];
+            store.yAccel[index] = accel[1];
+        }
+    }
+}
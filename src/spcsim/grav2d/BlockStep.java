@@ -0,0 +1,170 @@
+package spcsim.grav2d;
+
+/* Author: Kent Fukuda
+ * Description: Implementation of the Gravity2D simulation environment that gives every body its own power of two fraction of the time step
+ * Created: 10-16-26
+ * Status: environment class, finished
+ * Dependencies: SimObject, Gravity2D, SpaceObject2D
+ * Licensed under GNU v3, see src/spcsim/SpaceSim.java for more details
+ */
+
+import java.lang.invoke.MethodHandles;
+import spcsim.impl.MainFrame;
+import spcsim.base.EditPane;
+import spcsim.base.SimObject;
+
+public final class BlockStep extends Gravity2D {
+    //serialversionuid
+    public static final long serialVersionUID = SimObject.registerParticleClass( MethodHandles.lookup(), "GRZDBK" );
+    //finest rung, where a body takes 2^MAX_RUNG steps per time step
+    private static final int MAX_RUNG = 20;
+    //length of a time step in units of the finest rung
+    private static final int STEP_UNITS = 1 << MAX_RUNG;
+    //number of active bodies summed by each task
+    private static final int BLOCK = 32;
+    
+    private double ratioThresh;
+    //rung of every body and the time its current step started, in units of the finest rung
+    private transient int[] rung, stepStart, activeList;
+    private transient boolean[] active;
+    //acceleration at the last force calculation of each body and the largest step its pairs allow
+    private transient double[] xAccel, yAccel, limitSq;
+    private transient boolean forcesValid;
+    
+    //private constructor
+    private BlockStep() {
+        ratioThresh = 0.01;
+        rung = stepStart = activeList = new int[0];
+        active = new boolean[0];
+        xAccel = yAccel = limitSq = new double[0];
+        forcesValid = false;
+    }
+    
+    //overridden gui method to add threshold for the step of each body
+    @Override
+    protected void generateGUI( EditPane editPane, MainFrame application ) {
+        super.generateGUI( editPane, application );
+        editPane.addValueMenuItem( EditPane.CONTROL_TYPE, "Accuracy Threshold", "Set Threshold", () -> ratioThresh, val -> {
+                if( val <= 0 )
+                    throw new IllegalArgumentException( "Threshold must be larger than 0" );
+                ratioThresh = val;
+                forcesValid = false;
+            } );
+    }
+    
+    //implemented simulation method
+    //bodies kick, drift and kick on their own rung, every body drifts to each step end so active bodies see current positions
+    @Override
+    protected void simulate() {
+        store.load( particles );
+        int size = store.size();
+        if( rung.length < size ) {
+            int capacity = store.xPos.length;
+            rung = new int[capacity];
+            stepStart = new int[capacity];
+            activeList = new int[capacity];
+            active = new boolean[capacity];
+            xAccel = new double[capacity];
+            yAccel = new double[capacity];
+            limitSq = new double[capacity];
+            forcesValid = false;
+        }
+        //the closing forces and rungs of the last time step open this one unless the particles were changed
+        if( !forcesValid || !store.unchanged() ) {
+            for( int i = 0; i < size; i++ ) {
+                activeList[i] = i;
+                active[i] = true;
+            }
+            calculateForces( size );
+            for( int i = 0; i < size; i++ ) {
+                rung[i] = rungFor( limitSq[i], 0 );
+                active[i] = false;
+            }
+        }
+        double unit = timeStep / STEP_UNITS;
+        for( int i = 0; i < size; i++ ) {
+            stepStart[i] = 0;
+            kick( i, ( STEP_UNITS >> rung[i] ) * unit / 2 );
+        }
+        int time = 0;
+        while( time < STEP_UNITS ) {
+            int next = STEP_UNITS;
+            for( int i = 0; i < size; i++ )
+                next = Math.min( next, stepStart[i] + ( STEP_UNITS >> rung[i] ) );
+            store.drift( ( next - time ) * unit );
+            time = next;
+            int activeCount = 0;
+            for( int i = 0; i < size; i++ )
+                if( stepStart[i] + ( STEP_UNITS >> rung[i] ) == time ) {
+                    activeList[activeCount++] = i;
+                    active[i] = true;
+                }
+            calculateForces( activeCount );
+            for( int k = 0; k < activeCount; k++ ) {
+                int i = activeList[k];
+                kick( i, ( STEP_UNITS >> rung[i] ) * unit / 2 );
+                //moves to a coarser rung only one level at a time and where its steps line up
+                rung[i] = rungFor( limitSq[i], time % ( STEP_UNITS >> Math.max( rung[i] - 1, 0 ) ) == 0 ? rung[i] - 1 : rung[i] );
+                stepStart[i] = time;
+                if( time < STEP_UNITS )
+                    kick( i, ( STEP_UNITS >> rung[i] ) * unit / 2 );
+                active[i] = false;
+            }
+        }
+        store.save( particles );
+        forcesValid = true;
+        super.updateContacts();
+    }
+    
+    
+    //private utility methods
+    //calculates the acceleration of the first count bodies of the active list from every body and the step their pairs allow
+    private void calculateForces( int count ) {
+        super.parallelFor( ( count + BLOCK - 1 ) / BLOCK, block -> {
+            double[] xPos = store.xPos, yPos = store.yPos, xVeloc = store.xVeloc, yVeloc = store.yVeloc, mass = store.mass, radius = store.radius;
+            int size = store.size();
+            for( int k = block * BLOCK; k < Math.min( block * BLOCK + BLOCK, count ); k++ ) {
+                int i = activeList[k];
+                double ax = 0, ay = 0, minStepSq = Double.POSITIVE_INFINITY;
+                for( int j = 0; j < size; j++ ) {
+                    if( j == i )
+                        continue;
+                    double xDiff = xPos[i] - xPos[j], yDiff = yPos[i] - yPos[j];
+                    double distSq = xDiff * xDiff + yDiff * yDiff;
+                    double dist = Math.sqrt( distSq );
+                    if( dist <= radius[i] + radius[j] ) {
+                        //a pair of two active bodies is reported once
+                        if( i < j || !active[j] )
+                            super.addContact( i, j );
+                    } else {
+                        double force = mass[j] / ( distSq * dist );
+                        ax += force * xDiff;
+                        ay += force * yDiff;
+                        double xvDiff = xVeloc[i] - xVeloc[j], yvDiff = yVeloc[i] - yVeloc[j];
+                        minStepSq = Math.min( minStepSq, ratioThresh * distSq / ( xvDiff * xvDiff + yvDiff * yvDiff ) );
+                    }
+                }
+                xAccel[i] = SpaceObject2D.OPT_GRAVITY_PULL * ax;
+                yAccel[i] = SpaceObject2D.OPT_GRAVITY_PULL * ay;
+                limitSq[i] = minStepSq;
+            }
+        } );
+    }
+    
+    //finest rung no finer than needed whose step is within a squared step limit, but never coarser than a minimum rung
+    private int rungFor( double stepSq, int minRung ) {
+        int result = Math.max( minRung, 0 );
+        double step = timeStep / ( 1 << result );
+        while( result < MAX_RUNG && step * step > stepSq ) {
+            result++;
+            step /= 2;
+        }
+        return result;
+    }
+    
+    //changes the velocity of a body by its last acceleration over a time
+    private void kick( int index, double time ) {
+        store.xVeloc[index] += xAccel[index] * time;
+        store.yVeloc[index] += yAccel[index] * time;
+    }
+}
@@ -0,0 +1,358 @@
+package spcsim.grav2d;
+
+/* Author: Kent Fukuda
+ * Description: Implementation of the Gravity2D simulation environment that calculates gravity with the fast multipole method
+ * Created: 10-16-26
+ * Status: environment class, finished
+ * Dependencies: SimObject, Gravity2D, SpaceObject2D
+ * Licensed under GNU v3, see src/spcsim/SpaceSim.java for more details
+ */
+
+import java.lang.invoke.MethodHandles;
+import java.util.Arrays;
+import spcsim.impl.MainFrame;
+import spcsim.base.EditPane;
+import spcsim.base.SimObject;
+
+public final class FastMultipole extends Gravity2D {
+    //serialversionuid
+    public static final long serialVersionUID = SimObject.registerParticleClass( MethodHandles.lookup(), "GRZDFM" );
+    //average number of bodies in a leaf cell and deepest level of cells
+    private static final int LEAF_SIZE = 24, MAX_LEVEL = 10, MAX_ORDER = 16;
+    
+    private int order;
+    //tables for the current expansion order
+    private transient int tableOrder, terms;
+    private transient double[][] binomial, translate;
+    //body arrays and leaf cell sorting
+    private transient int[] sorted, cellStart;
+    //expansions of every cell on every level
+    private transient double[][] multipoles, locals;
+    
+    //private constructor
+    private FastMultipole() {
+        order = 4;
+        tableOrder = -1;
+        reorderInterval = 64;
+        sorted = cellStart = new int[0];
+        multipoles = locals = new double[0][];
+    }
+    
+    //overridden gui method to add expansion order settings
+    @Override
+    protected void generateGUI( EditPane editPane, MainFrame application ) {
+        super.generateGUI( editPane, application );
+        super.generateIntegratorGUI( editPane );
+        super.generateReorderGUI( editPane );
+        editPane.addValueMenuItem( EditPane.CONTROL_TYPE, "Expansion Order", "Set Expansion Order", () -> order, val -> {
+                if( val < 1 || val > MAX_ORDER )
+                    throw new IllegalArgumentException( "Expansion order must be between 1 and " + MAX_ORDER );
+                order = (int)val;
+            } );
+    }
+    
+    //implemented simulation method
+    @Override
+    protected void simulate() {
+        store.load( particles );
+        super.integrate( this::calculateForces );
+        store.save( particles );
+        super.findContacts();
+        super.updateContacts();
+    }
+    
+    
+    //private utility methods
+    //calculates the gravity on every body of the store at its current position
+    private void calculateForces() {
+        int size = store.size();
+        if( size == 0 )
+            return;
+        int p = Math.max( 1, Math.min( order, MAX_ORDER ) );
+        if( tableOrder != p )
+            createTables( p );
+        if( sorted.length < size )
+            sorted = new int[ Math.max( size, sorted.length * 2 ) ];
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY, maxRadius = 0;
+        for( int i = 0; i < size; i++ ) {
+            minX = Math.min( minX, store.xPos[i] );
+            minY = Math.min( minY, store.yPos[i] );
+            maxX = Math.max( maxX, store.xPos[i] );
+            maxY = Math.max( maxY, store.yPos[i] );
+            maxRadius = Math.max( maxRadius, store.radius[i] );
+        }
+        double width = Math.max( Math.max( maxX - minX, maxY - minY ), Double.MIN_NORMAL ) * 1.0001;
+        //deepest level keeps leaves at least as wide as any touching pair so touching bodies stay in the direct near field
+        int depth = 0;
+        while( depth < MAX_LEVEL && (long)LEAF_SIZE << ( 2 * depth ) < size && width / ( 2 << depth ) >= 2 * maxRadius )
+            depth++;
+        int leafLevel = depth;
+        int levels = leafLevel + 1;
+        int side = 1 << leafLevel;
+        double leafWidth = width / side;
+        sortBodies( size, minX, minY, leafWidth, side );
+        if( multipoles.length < levels ) {
+            multipoles = Arrays.copyOf( multipoles, levels );
+            locals = Arrays.copyOf( locals, levels );
+        }
+        for( int l = 0; l < levels; l++ ) {
+            int length = ( 1 << ( 2 * l ) ) * terms;
+            if( multipoles[l] == null || multipoles[l].length < length ) {
+                multipoles[l] = new double[length];
+                locals[l] = new double[length];
+            }
+        }
+        //upward pass
+        double x0 = minX, y0 = minY;
+        super.parallelFor( side * side, cell -> particleToMultipole( cell, leafLevel, x0, y0, leafWidth ) );
+        for( int l = leafLevel - 1; l >= 2; l-- ) {
+            int level = l;
+            super.parallelFor( 1 << ( 2 * l ), cell -> multipoleToMultipole( cell, level, width / ( 1 << level ) ) );
+        }
+        //downward pass
+        for( int l = 2; l <= leafLevel; l++ ) {
+            int level = l;
+            super.parallelFor( 1 << ( 2 * l ), cell -> multipoleToLocal( cell, level, width / ( 1 << level ) ) );
+        }
+        super.parallelFor( side * side, cell -> localToParticle( cell, leafLevel, x0, y0, leafWidth ) );
+    }
+    
+    //sorts body indices by leaf cell
+    private void sortBodies( int size, double x0, double y0, double leafWidth, int side ) {
+        int cells = side * side;
+        if( cellStart.length < cells + 1 )
+            cellStart = new int[ cells + 1 ];
+        Arrays.fill( cellStart, 0, cells + 1, 0 );
+        int[] cellOf = new int[size];
+        for( int i = 0; i < size; i++ ) {
+            int ix = Math.min( (int)( ( store.xPos[i] - x0 ) / leafWidth ), side - 1 );
+            int iy = Math.min( (int)( ( store.yPos[i] - y0 ) / leafWidth ), side - 1 );
+            cellOf[i] = iy * side + ix;
+            cellStart[ cellOf[i] + 1 ]++;
+        }
+        for( int c = 0; c < cells; c++ )
+            cellStart[c + 1] += cellStart[c];
+        int[] fill = Arrays.copyOf( cellStart, cells );
+        for( int i = 0; i < size; i++ )
+            sorted[ fill[ cellOf[i] ]++ ] = i;
+    }
+    
+    //calculates the multipole expansion of a leaf cell from its bodies
+    private void particleToMultipole( int cell, int level, double x0, double y0, double leafWidth ) {
+        int side = 1 << level;
+        double[] m = multipoles[level];
+        int base = cell * terms;
+        Arrays.fill( m, base, base + terms, 0 );
+        double cx = x0 + ( cell % side + 0.5 ) * leafWidth, cy = y0 + ( cell / side + 0.5 ) * leafWidth;
+        double[] xPow = new double[ tableOrder + 1 ], yPow = new double[ tableOrder + 1 ];
+        for( int s = cellStart[cell]; s < cellStart[cell + 1]; s++ ) {
+            int i = sorted[s];
+            powers( store.xPos[i] - cx, xPow );
+            powers( store.yPos[i] - cy, yPow );
+            for( int n = 0, t = base; n <= tableOrder; n++ )
+                for( int b = 0; b <= n; b++, t++ )
+                    m[t] += store.mass[i] * xPow[n - b] * yPow[b];
+        }
+    }
+    
+    //shifts the multipole expansions of the four children into a parent cell
+    private void multipoleToMultipole( int cell, int level, double cellWidth ) {
+        int side = 1 << level;
+        int ix = cell % side, iy = cell / side;
+        double[] parent = multipoles[level], children = multipoles[level + 1];
+        int base = cell * terms;
+        Arrays.fill( parent, base, base + terms, 0 );
+        double[] xPow = new double[ tableOrder + 1 ], yPow = new double[ tableOrder + 1 ];
+        for( int q = 0; q < 4; q++ ) {
+            int cx = 2 * ix + ( q & 1 ), cy = 2 * iy + ( q >> 1 );
+            int child = ( cy * side * 2 + cx ) * terms;
+            //offset from the parent center to the child center
+            powers( ( ( q & 1 ) - 0.5 ) * cellWidth / 2, xPow );
+            powers( ( ( q >> 1 ) - 0.5 ) * cellWidth / 2, yPow );
+            for( int n = 0, t = base; n <= tableOrder; n++ )
+                for( int b = 0; b <= n; b++, t++ ) {
+                    int a = n - b;
+                    double sum = 0;
+                    for( int i = 0; i <= a; i++ )
+                        for( int j = 0; j <= b; j++ )
+                            sum += binomial[a][i] * binomial[b][j] * xPow[a - i] * yPow[b - j] * children[ child + index( i, j ) ];
+                    parent[t] += sum;
+                }
+        }
+    }
+    
+    //calculates the local expansion of a cell from its parent and its interaction list
+    private void multipoleToLocal( int cell, int level, double cellWidth ) {
+        int side = 1 << level;
+        int ix = cell % side, iy = cell / side;
+        double[] local = locals[level], m = multipoles[level];
+        int base = cell * terms;
+        Arrays.fill( local, base, base + terms, 0 );
+        double[] xPow = new double[ tableOrder + 1 ], yPow = new double[ tableOrder + 1 ];
+        //shifts the local expansion of the parent to the center of this cell
+        if( level > 2 ) {
+            double[] parent = locals[level - 1];
+            int parentBase = ( ( iy >> 1 ) * ( side >> 1 ) + ( ix >> 1 ) ) * terms;
+            powers( ( ( ix & 1 ) - 0.5 ) * cellWidth, xPow );
+            powers( ( ( iy & 1 ) - 0.5 ) * cellWidth, yPow );
+            for( int n = 0, t = base; n <= tableOrder; n++ )
+                for( int b = 0; b <= n; b++, t++ ) {
+                    int a = n - b;
+                    double sum = 0;
+                    for( int i = a; i <= tableOrder; i++ )
+                        for( int j = b; i + j <= tableOrder; j++ )
+                            sum += binomial[i][a] * binomial[j][b] * xPow[i - a] * yPow[j - b] * parent[ parentBase + index( i, j ) ];
+                    local[t] = sum;
+                }
+        }
+        //adds the children of the neighbors of the parent that are not neighbors of this cell
+        double[] scaled = new double[terms], sum = new double[terms];
+        double[] scale = new double[ tableOrder + 1 ];
+        for( int n = 0; n <= tableOrder; n++ )
+            scale[n] = Math.pow( cellWidth, -n );
+        int px = ix >> 1, py = iy >> 1;
+        for( int sy = Math.max( 2 * py - 2, 0 ); sy < Math.min( 2 * py + 4, side ); sy++ )
+            for( int sx = Math.max( 2 * px - 2, 0 ); sx < Math.min( 2 * px + 4, side ); sx++ ) {
+                int dx = ix - sx, dy = iy - sy;
+                if( Math.abs( dx ) <= 1 && Math.abs( dy ) <= 1 )
+                    continue;
+                int source = ( sy * side + sx ) * terms;
+                for( int n = 0, t = 0; n <= tableOrder; n++ )
+                    for( int b = 0; b <= n; b++, t++ )
+                        scaled[t] = m[ source + t ] * scale[n];
+                double[] op = translate[ ( dx + 3 ) * 7 + dy + 3 ];
+                for( int l = 0, o = 0; l < terms; l++ ) {
+                    double s = 0;
+                    for( int k = 0; k < terms; k++, o++ )
+                        s += op[o] * scaled[k];
+                    sum[l] += s;
+                }
+            }
+        for( int n = 0, t = 0; n <= tableOrder; n++ )
+            for( int b = 0; b <= n; b++, t++ )
+                local[ base + t ] += sum[t] * scale[n] / cellWidth;
+    }
+    
+    //evaluates the local expansion and the neighboring leaves for every body of a leaf cell
+    private void localToParticle( int cell, int level, double x0, double y0, double leafWidth ) {
+        int side = 1 << level;
+        int ix = cell % side, iy = cell / side;
+        double[] local = locals[level];
+        int base = cell * terms;
+        double cx = x0 + ( ix + 0.5 ) * leafWidth, cy = y0 + ( iy + 0.5 ) * leafWidth;
+        double[] xPow = new double[ tableOrder + 1 ], yPow = new double[ tableOrder + 1 ];
+        double pull = SpaceObject2D.OPT_GRAVITY_PULL;
+        for( int s = cellStart[cell]; s < cellStart[cell + 1]; s++ ) {
+            int i = sorted[s];
+            double ax = 0, ay = 0;
+            //far field from the gradient of the local expansion
+            if( level >= 2 ) {
+                powers( store.xPos[i] - cx, xPow );
+                powers( store.yPos[i] - cy, yPow );
+                double xGrad = 0, yGrad = 0;
+                for( int n = 1; n <= tableOrder; n++ )
+                    for( int b = 0; b <= n; b++ ) {
+                        int a = n - b;
+                        double coef = local[ base + index( a, b ) ];
+                        if( a > 0 )
+                            xGrad += a * coef * xPow[a - 1] * yPow[b];
+                        if( b > 0 )
+                            yGrad += b * coef * xPow[a] * yPow[b - 1];
+                    }
+                ax -= pull * xGrad;
+                ay -= pull * yGrad;
+            }
+            //near field summed directly
+            double px = store.xPos[i], py = store.yPos[i], pr = store.radius[i];
+            for( int ny = Math.max( iy - 1, 0 ); ny <= Math.min( iy + 1, side - 1 ); ny++ )
+                for( int nx = Math.max( ix - 1, 0 ); nx <= Math.min( ix + 1, side - 1 ); nx++ ) {
+                    int neighbor = ny * side + nx;
+                    for( int t = cellStart[neighbor]; t < cellStart[neighbor + 1]; t++ ) {
+                        int j = sorted[t];
+                        if( j == i )
+                            continue;
+                        double xDiff = px - store.xPos[j];
+                        double yDiff = py - store.yPos[j];
+                        double distSq = xDiff * xDiff + yDiff * yDiff;
+                        double dist = Math.sqrt( distSq );
+                        //touching pairs are left to the broad phase
+                        if( dist > pr + store.radius[j] ) {
+                            double force = pull * store.mass[j] / ( distSq * dist );
+                            ax += force * xDiff;
+                            ay += force * yDiff;
+                        }
+                    }
+                }
+            store.xAccel[i] = ax;
+            store.yAccel[i] = ay;
+        }
+    }
+    
+    //creates binomial and unit width translation tables for an expansion order
+    private void createTables( int p ) {
+        tableOrder = p;
+        terms = ( p + 1 ) * ( p + 2 ) / 2;
+        binomial = new double[ 2 * p + 1 ][];
+        for( int n = 0; n <= 2 * p; n++ ) {
+            binomial[n] = new double[ n + 1 ];
+            binomial[n][0] = binomial[n][n] = 1;
+            for( int k = 1; k < n; k++ )
+                binomial[n][k] = binomial[n - 1][k - 1] + binomial[n - 1][k];
+        }
+        //multipole to local operators for the 7x7 cell offsets of an interaction list
+        translate = new double[49][];
+        double[] taylor = new double[ ( 2 * p + 1 ) * ( 2 * p + 2 ) / 2 ];
+        for( int dx = -3; dx <= 3; dx++ )
+            for( int dy = -3; dy <= 3; dy++ ) {
+                if( Math.abs( dx ) <= 1 && Math.abs( dy ) <= 1 )
+                    continue;
+                taylorCoefficients( dx, dy, 2 * p, taylor );
+                double[] op = new double[ terms * terms ];
+                for( int ln = 0, l = 0; ln <= p; ln++ )
+                    for( int lb = 0; lb <= ln; lb++, l++ )
+                        for( int kn = 0, k = 0; kn <= p; kn++ )
+                            for( int kb = 0; kb <= kn; kb++, k++ ) {
+                                int la = ln - lb, ka = kn - kb;
+                                op[ l * terms + k ] = ( ( kn & 1 ) == 0 ? 1 : -1 ) * binomial[ ka + la ][la] * binomial[ kb + lb ][lb] *
+                                        taylor[ index( ka + la, kb + lb ) ];
+                            }
+                translate[ ( dx + 3 ) * 7 + dy + 3 ] = op;
+            }
+    }
+    
+    
+    //static utility methods
+    //index of the term x^a y^b in an expansion
+    private static int index( int a, int b ) {
+        int n = a + b;
+        return n * ( n + 1 ) / 2 + b;
+    }
+    
+    //fills the powers of a value
+    private static void powers( double value, double[] pow ) {
+        pow[0] = 1;
+        for( int n = 1; n < pow.length; n++ )
+            pow[n] = pow[n - 1] * value;
+    }
+    
+    //calculates the taylor coefficients of 1/r at (x, y) up to an order
+    private static void taylorCoefficients( double x, double y, int maxOrder, double[] out ) {
+        double rSq = x * x + y * y;
+        out[0] = 1 / Math.sqrt( rSq );
+        for( int n = 1; n <= maxOrder; n++ )
+            for( int b = 0; b <= n; b++ ) {
+                int a = n - b;
+                double sum = 0;
+                if( a > 0 )
+                    sum += ( 2 * n - 1 ) * x * out[ index( a - 1, b ) ];
+                if( b > 0 )
+                    sum += ( 2 * n - 1 ) * y * out[ index( a, b - 1 ) ];
+                if( a > 1 )
+                    sum += ( n - 1 ) * out[ index( a - 2, b ) ];
+                if( b > 1 )
+                    sum += ( n - 1 ) * out[ index( a, b - 2 ) ];
+                out[ index( a, b ) ] = -sum / ( n * rSq );
+            }
+    }
+}
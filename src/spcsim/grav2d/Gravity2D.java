@@ -4,7 +4,7 @@ package spcsim.grav2d;
  * Description: Parent class of the Gravity2D simulations implementations
  * Created: 9-1-22
  * Status: environment class, finished
- * Dependencies: SimObject, Env2D, SpaceObject2D, EditPane, Logger, Units, MainFrame
+ * Dependencies: SimObject, Env2D, SpaceObject2D, EditPane, Logger, Units, MainFrame, BroadPhase, UnionFind
  * Licensed under GNU v3, see src/spcsim/SpaceSim.java for more details
  */
 
@@ -26,7 +26,9 @@ import spcsim.base.EditPane;
 import spcsim.base.Logger;
 import spcsim.base.SimObject;
 import spcsim.base.Units;
+import spcsim.impl.BroadPhase;
 import spcsim.impl.Env2D;
+import spcsim.impl.UnionFind;
 
 public abstract class Gravity2D extends Env2D<SpaceObject2D> {
     
@@ -36,12 +38,23 @@ public abstract class Gravity2D extends Env2D<SpaceObject2D> {
     private static final String DEFAULT_MASS = "earth masses", DEFAULT_LENGTH = "earth radii", DEFAULT_TIME = "days", DEFAULT_DEGREE = "";
     //object used for when selectioned object is null
     private static final SpaceObject2D NULL_SELECT = new SpaceObject2D();
+    //number of recorded pairs joined by each task of updateContacts
+    private static final int CONTACT_BLOCK = 256;
     
     //environment variables for rendering settings
     private boolean showNames, showEnvStatus;
     private String lengthUnit, timeUnit;
     private transient boolean isVelocDragMode, addMoonMode;
     private transient SpaceObject2D selected;//selected object to edit
+    //pairs of touching bodies recorded during a tick
+    private transient final Object contactLock;
+    private transient long[] contacts;
+    private transient int contactCount;
+    //finds the touching bodies of the store for engines whose force calculation does not visit every pair
+    private transient final BroadPhase broadPhase;
+    //groups of touching bodies, and the group members packed with their root in the high bits
+    private transient final UnionFind contactGroups;
+    private transient long[] members;
     
     
     //static initializzer
@@ -60,6 +73,12 @@ public abstract class Gravity2D extends Env2D<SpaceObject2D> {
         isVelocDragMode = false;
         addMoonMode = false;
         showEnvStatus = true;
+        contactLock = new Object();
+        contacts = new long[16];
+        contactCount = 0;
+        broadPhase = new BroadPhase();
+        contactGroups = new UnionFind();
+        members = new long[0];
         selected = new SpaceObject2D( "Default Planet", 0xFFC97C2E, 5.5171459763102915, 3.74510897085609, 0, 0, 0, 0 );
         particles.add( selected );
     }
@@ -292,6 +311,68 @@ public abstract class Gravity2D extends Env2D<SpaceObject2D> {
     }
     
     
+    //utilities for implementations
+    //records a pair of touching bodies to be merged by updateContacts. safe to call from worker threads
+    protected final void addContact( int index1, int index2 ) {
+        synchronized( contactLock ) {
+            if( contactCount == contacts.length )
+                contacts = Arrays.copyOf( contacts, contactCount * 2 );
+            contacts[contactCount++] = ( (long)Math.min( index1, index2 ) << 32 ) | Math.max( index1, index2 );
+        }
+    }
+    
+    //records the touching pairs of the store with the broad phase, for engines that approximate gravity instead of visiting every pair
+    protected final void findContacts() {
+        broadPhase.findContacts( store, this::addContact );
+    }
+    
+    //merges every group of bodies joined by recorded pairs into its lowest index in one step and removes the rest of the group
+    protected final void updateContacts() {
+        if( contactCount == 0 )
+            return;
+        int count = contactCount;
+        long[] pairs = contacts;
+        contactGroups.reset( particles.size() );
+        super.parallelFor( ( count + CONTACT_BLOCK - 1 ) / CONTACT_BLOCK, block -> {
+            for( int i = block * CONTACT_BLOCK; i < Math.min( block * CONTACT_BLOCK + CONTACT_BLOCK, count ); i++ )
+                contactGroups.union( (int)( pairs[i] >>> 32 ), (int)pairs[i] );
+        } );
+        //every body below a root, sorted by root then index so groups are contiguous and merged in the same order on any thread count
+        if( members.length < 2 * count )
+            members = new long[ 2 * count ];
+        int memberCount = 0;
+        for( int i = 0; i < 2 * count; i++ ) {
+            int index = i % 2 == 0 ? (int)( pairs[i / 2] >>> 32 ) : (int)pairs[i / 2];
+            int root = contactGroups.find( index );
+            if( root != index )
+                members[memberCount++] = (long)root << 32 | index;
+        }
+        Arrays.sort( members, 0, memberCount );
+        int groupCount = 0;
+        for( int i = 0; i < memberCount; i++ )
+            if( i == 0 || members[i] != members[i - 1] )
+                members[groupCount++] = members[i];
+        int[] groupStart = new int[groupCount + 1];
+        int groups = 0;
+        for( int i = 0; i < groupCount; i++ )
+            if( i == 0 || members[i] >>> 32 != members[i - 1] >>> 32 )
+                groupStart[groups++] = i;
+        groupStart[groups] = groupCount;
+        long[] sorted = members;
+        super.parallelFor( groups, group -> {
+            int from = groupStart[group], to = groupStart[group + 1];
+            SpaceObject2D[] absorbed = new SpaceObject2D[ to - from ];
+            for( int i = from; i < to; i++ ) {
+                absorbed[i - from] = particles.get( (int)sorted[i] );
+                super.markRemoved( (int)sorted[i] );
+            }
+            particles.get( (int)( sorted[from] >>> 32 ) ).merge( absorbed, absorbed.length );
+        } );
+        super.compactRemoved();
+        contactCount = 0;
+    }
+    
+    
     //private methods
     //formats a double value to unit
     private String format( Units converter, double value, String defaultUnit, String unit ) {
@@ -0,0 +1,129 @@
+package spcsim.grav2d;
+
+/* Author: Kent Fukuda
+ * Description: Implementation of the Gravity2D simulation environment that moves bodies with a fourth order hermite predictor corrector
+ * Created: 10-16-26
+ * Status: environment class, finished
+ * Dependencies: SimObject, Gravity2D, SpaceObject2D
+ * Licensed under GNU v3, see src/spcsim/SpaceSim.java for more details
+ */
+
+import java.lang.invoke.MethodHandles;
+import spcsim.base.SimObject;
+
+public final class Hermite extends Gravity2D {
+    //serialversionuid
+    public static final long serialVersionUID = SimObject.registerParticleClass( MethodHandles.lookup(), "GRZDHM" );
+    //number of bodies summed by each task
+    private static final int BLOCK = 64;
+    
+    //jerk of the bodies in the store, and the state at the start of a step
+    private transient double[] xJerk, yJerk, xPos0, yPos0, xVeloc0, yVeloc0, xAccel0, yAccel0, xJerk0, yJerk0;
+    //whether the store still holds the accelerations and jerks of the last step
+    private transient boolean forcesValid;
+    
+    //private constructor
+    private Hermite() {
+        xJerk = yJerk = xPos0 = yPos0 = xVeloc0 = yVeloc0 = xAccel0 = yAccel0 = xJerk0 = yJerk0 = new double[0];
+        forcesValid = false;
+    }
+    
+    //implemented simulation method
+    @Override
+    protected void simulate() {
+        store.load( particles );
+        int size = store.size();
+        if( xJerk.length < size ) {
+            int capacity = store.xPos.length;
+            xJerk = new double[capacity];
+            yJerk = new double[capacity];
+            xPos0 = new double[capacity];
+            yPos0 = new double[capacity];
+            xVeloc0 = new double[capacity];
+            yVeloc0 = new double[capacity];
+            xAccel0 = new double[capacity];
+            yAccel0 = new double[capacity];
+            xJerk0 = new double[capacity];
+            yJerk0 = new double[capacity];
+            forcesValid = false;
+        }
+        //forces at the predicted positions of the last step start this one unless the particles were changed
+        if( forcesValid && store.unchanged() ) {
+            System.arraycopy( xAccel0, 0, store.xAccel, 0, size );
+            System.arraycopy( yAccel0, 0, store.yAccel, 0, size );
+        } else {
+            calculateForces( size );
+            System.arraycopy( xJerk, 0, xJerk0, 0, size );
+            System.arraycopy( yJerk, 0, yJerk0, 0, size );
+        }
+        double dt = timeStep, dt2 = dt * dt / 2, dt3 = dt * dt * dt / 6;
+        //predicts the positions and velocities from the taylor series
+        for( int i = 0; i < size; i++ ) {
+            xPos0[i] = store.xPos[i];
+            yPos0[i] = store.yPos[i];
+            xVeloc0[i] = store.xVeloc[i];
+            yVeloc0[i] = store.yVeloc[i];
+            xAccel0[i] = store.xAccel[i];
+            yAccel0[i] = store.yAccel[i];
+            store.xPos[i] += xVeloc0[i] * dt + xAccel0[i] * dt2 + xJerk0[i] * dt3;
+            store.yPos[i] += yVeloc0[i] * dt + yAccel0[i] * dt2 + yJerk0[i] * dt3;
+            store.xVeloc[i] += xAccel0[i] * dt + xJerk0[i] * dt2;
+            store.yVeloc[i] += yAccel0[i] * dt + yJerk0[i] * dt2;
+        }
+        store.clearAccelerations();
+        calculateForces( size );
+        //corrects with the forces at both ends of the step
+        double dtSq = dt * dt / 12;
+        for( int i = 0; i < size; i++ ) {
+            double xVeloc = xVeloc0[i] + ( xAccel0[i] + store.xAccel[i] ) * dt / 2 + ( xJerk0[i] - xJerk[i] ) * dtSq;
+            double yVeloc = yVeloc0[i] + ( yAccel0[i] + store.yAccel[i] ) * dt / 2 + ( yJerk0[i] - yJerk[i] ) * dtSq;
+            store.xPos[i] = xPos0[i] + ( xVeloc0[i] + xVeloc ) * dt / 2 + ( xAccel0[i] - store.xAccel[i] ) * dtSq;
+            store.yPos[i] = yPos0[i] + ( yVeloc0[i] + yVeloc ) * dt / 2 + ( yAccel0[i] - store.yAccel[i] ) * dtSq;
+            store.xVeloc[i] = xVeloc;
+            store.yVeloc[i] = yVeloc;
+            xAccel0[i] = store.xAccel[i];
+            yAccel0[i] = store.yAccel[i];
+            xJerk0[i] = xJerk[i];
+            yJerk0[i] = yJerk[i];
+        }
+        store.save( particles );
+        forcesValid = true;
+        super.updateContacts();
+    }
+    
+    
+    //private utility methods
+    //calculates the acceleration and jerk of every body of the store at its current position and velocity
+    private void calculateForces( int size ) {
+        super.parallelFor( ( size + BLOCK - 1 ) / BLOCK, block -> {
+            double[] xPos = store.xPos, yPos = store.yPos, xVeloc = store.xVeloc, yVeloc = store.yVeloc, mass = store.mass, radius = store.radius;
+            double pull = SpaceObject2D.OPT_GRAVITY_PULL;
+            for( int i = block * BLOCK; i < Math.min( block * BLOCK + BLOCK, size ); i++ ) {
+                double ax = 0, ay = 0, jx = 0, jy = 0;
+                for( int j = 0; j < size; j++ ) {
+                    if( j == i )
+                        continue;
+                    double xDiff = xPos[i] - xPos[j], yDiff = yPos[i] - yPos[j];
+                    double xvDiff = xVeloc[i] - xVeloc[j], yvDiff = yVeloc[i] - yVeloc[j];
+                    double distSq = xDiff * xDiff + yDiff * yDiff;
+                    double dist = Math.sqrt( distSq );
+                    if( dist <= radius[i] + radius[j] ) {
+                        if( i < j )
+                            super.addContact( i, j );
+                    } else {
+                        double force = mass[j] / ( distSq * dist );
+                        double rate = 3 * ( xDiff * xvDiff + yDiff * yvDiff ) / distSq;
+                        ax += force * xDiff;
+                        ay += force * yDiff;
+                        jx += force * ( xvDiff - rate * xDiff );
+                        jy += force * ( yvDiff - rate * yDiff );
+                    }
+                }
+                store.xAccel[i] = pull * ax;
+                store.yAccel[i] = pull * ay;
+                xJerk[i] = pull * jx;
+                yJerk[i] = pull * jy;
+            }
+        } );
+    }
+}
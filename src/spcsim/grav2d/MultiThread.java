@@ -4,15 +4,15 @@ package spcsim.grav2d;
  * Description: Implementation of the Gravity2D simulation environment that runs on multiple threads
  * Created: 9-1-22
  * Status: environment class, finished
- * Dependencies: SimObject, Gravity2D, SpaceObject2D
+ * Dependencies: SimObject, Gravity2D, SpaceObject2D, GravityKernel, WorkerPool
  * Licensed under GNU v3, see src/spcsim/SpaceSim.java for more details
  */
 
 import java.lang.invoke.MethodHandles;
-import java.util.ArrayList;
-import java.util.Collections;
 import javax.swing.JOptionPane;
 import spcsim.impl.MainFrame;
+import spcsim.impl.GravityKernel;
+import spcsim.impl.WorkerPool;
 import spcsim.base.EditPane;
 import spcsim.base.SimObject;
 
@@ -20,27 +20,27 @@ public final class MultiThread extends Gravity2D {
     //serialversionuid
     public static final long serialVersionUID = SimObject.registerParticleClass( MethodHandles.lookup(), "GRZDMT" );
     
-    private final Object lock;
-    private final ArrayList<Integer> removeQueue;
     private volatile int numThreads;
-    private transient volatile int activeThreads, simStep, tasksTodo, tasksToComplete, blockSize;
+    private boolean symmetricPairs;
+    private transient final GravityKernel kernel;
+    //acceleration buffers of each tile slot for the symmetric mode
+    private transient double[][] xBuffers, yBuffers;
     
     //private constructor
     private MultiThread() {
-        lock = new Object();
-        removeQueue = new ArrayList<>();
-        activeThreads = 0;
-        numThreads = Math.max( Runtime.getRuntime().availableProcessors() - Thread.activeCount() - 1, 0 );
-        simStep = 0;
-        tasksTodo = 0;
-        tasksToComplete = 0;
-        blockSize = 0;
+        numThreads = WorkerPool.shared().parallelism() - 1;
+        symmetricPairs = true;
+        reorderInterval = 64;
+        kernel = GravityKernel.scalar();
+        xBuffers = yBuffers = new double[0][];
     }
     
     //overridden gui method to add worker count settings
     @Override
     protected void generateGUI( EditPane editPane, MainFrame application ) {
         super.generateGUI( editPane, application );
+        super.generateIntegratorGUI( editPane );
+        super.generateReorderGUI( editPane );
         editPane.addMenuItem( EditPane.CONTROL_TYPE, "Number of Threads", a -> {
             String response = JOptionPane.showInputDialog( "Set Worker Thread Count", Integer.toString( numThreads ) );
             try {
@@ -51,88 +51,80 @@ public final class MultiThread extends Gravity2D {
                 JOptionPane.showMessageDialog( null, "Could not parse invalid integer", "Error", JOptionPane.ERROR_MESSAGE );
             }
         } );
+        editPane.addToggleMenuItem( EditPane.CONTROL_TYPE, "Symmetric Pairs", () -> symmetricPairs, val -> symmetricPairs = val );
     }
 
     //implemented simulation method
     @Override
-    protected void simulate() { 
-        synchronized( lock ) {
-            while( activeThreads < numThreads ) {
-                var thread = new Thread( this::runWorker, "Simulator-" + super.typeName() + "-Worker-" + activeThreads );
-                thread.setPriority( Thread.MAX_PRIORITY );
-                thread.setDaemon( true );
-                thread.start();
-                activeThreads++;
-            }
-        }
-        tasksTodo = particles.size() * ( particles.size() + 1 ) / 2;
-        tasksToComplete = tasksTodo;
-        simStep++;
-        doTasks();
-        synchronized( particles ) {
-            while( !removeQueue.isEmpty() )
-                particles.remove( (int)removeQueue.remove( 0 ) );
-        }
+    protected void simulate() {
+        store.load( particles );
+        super.integrate( this::calculateForces );
+        store.save( particles );
+        super.updateContacts();
     }
-
-    //runnable method each worker thread runs
-    private void runWorker() {
-        int threadStep = simStep;
-        while( simActive )
-            if( threadStep < simStep ) {
-                doTasks();
-                threadStep++;
+    
+    
+    //private utility methods
+    //calculates the gravity on every body of the store at its current position
+    private void calculateForces() {
+        int size = store.size();
+        //one share of the bodies per thread, so at most numThreads workers join the simulation thread
+        int shares = Math.max( Math.min( numThreads + 1, size ), 1 );
+        //symmetric tiles are summed in buffers claimed by whichever thread is free, so deterministic mode sums whole rows instead
+        if( symmetricPairs && !super.deterministic ) {
+            int slots = Math.min( shares, WorkerPool.shared().parallelism() );
+            if( xBuffers.length != slots || xBuffers[0].length < size ) {
+                int capacity = Math.max( size, xBuffers.length == 0 ? 0 : xBuffers[0].length * 2 );
+                xBuffers = new double[slots][capacity];
+                yBuffers = new double[slots][capacity];
             }
-        synchronized( lock ) {
-            activeThreads--;
-        }
+            super.scheduler.forEachTile( size, slots, this::interactTile );
+            super.parallelFor( shares, share -> reduceBuffers( (int)( (long)size * share / shares ), (int)( (long)size * ( share + 1 ) / shares ) ) );
+        } else
+            super.parallelFor( shares, share -> kernel.accelerate( store, (int)( (long)size * share / shares ), (int)( (long)size * ( share + 1 ) / shares ),
+                    SpaceObject2D.OPT_GRAVITY_PULL, super::addContact ) );
     }
     
-    //method completed when tasks are executed
-    private void doTasks() {
-        int start, end;
-        do {
-            synchronized( lock ) {
-                start = tasksTodo;
-                end = ( tasksTodo -= blockSize );
-            }
-            end = end < 0 ? 0 : end;
-            int size = particles.size();
-            int simSize = Math.max( start - size, 0 );
-            int updateSize = blockSize - simSize;
-            for( int i = start; i > size; i-- ) {
-                int index1 = (int)( -Math.sqrt( 2 * ( i - size ) + 2.25 ) + size - 1.499 );
-                int a = -index1 + size - 3;
-                int index2 = -i + a * ( a + 1 ) / 2 + 2 * i - 2;
-                SpaceObject2D obj1 = particles.get( index1 ), obj2 = particles.get( index2 );
-                double dist;
-                synchronized( obj1 ) {
-                    synchronized( obj2 ) {
-                        dist = obj1.interact( obj2 );
-                    }
+    //interacts the pairs of a tile, applying both sides of the force to the slot's own buffers
+    private void interactTile( int slot, int rowFrom, int rowTo, int columnFrom, int columnTo ) {
+        double[] xAccel = xBuffers[slot], yAccel = yBuffers[slot];
+        double[] xPos = store.xPos, yPos = store.yPos, mass = store.mass, radius = store.radius;
+        double pull = SpaceObject2D.OPT_GRAVITY_PULL;
+        for( int i = rowFrom; i < rowTo; i++ ) {
+            double px = xPos[i], py = yPos[i], pr = radius[i], pm = mass[i];
+            double ax = 0, ay = 0;
+            for( int j = rowFrom == columnFrom ? i + 1 : columnFrom; j < columnTo; j++ ) {
+                double xDiff = px - xPos[j];
+                double yDiff = py - yPos[j];
+                double distSq = xDiff * xDiff + yDiff * yDiff;
+                double dist = Math.sqrt( distSq );
+                if( dist <= pr + radius[j] )
+                    super.addContact( i, j );
+                else {
+                    double force = pull / ( distSq * dist );
+                    double forceX = force * xDiff, forceY = force * yDiff;
+                    ax += forceX * mass[j];
+                    ay += forceY * mass[j];
+                    xAccel[j] -= forceX * pm;
+                    yAccel[j] -= forceY * pm;
                 }
-                if( dist < 0 )
-                    synchronized( removeQueue ) {
-                        int removeIndex = Collections.binarySearch( removeQueue, index2 );
-                        if( removeIndex < 0 ) {
-                            obj2.mass = 0;
-                            removeQueue.add( -removeIndex - 1, index2 );
-                        }
-                    }
-            }
-            synchronized( lock ) {
-                tasksToComplete -= simSize;
             }
-            for( int i = start - simSize; i > end; i-- )
-                particles.get( i ).update( timeStep );
-            synchronized( lock ) {
-                tasksToComplete -= updateSize;
+            xAccel[i] += ax;
+            yAccel[i] += ay;
+        }
+    }
+    
+    //sums the buffers of every slot into the store for the bodies from index from to index to and clears them for the next tick
+    private void reduceBuffers( int from, int to ) {
+        for( double[] xAccel : xBuffers )
+            for( int i = from; i < to; i++ ) {
+                store.xAccel[i] += xAccel[i];
+                xAccel[i] = 0;
             }
-        } while( end > 0 );
-        try {
-            while( tasksToComplete > 0 ) {
-                Thread.sleep( 1 );
+        for( double[] yAccel : yBuffers )
+            for( int i = from; i < to; i++ ) {
+                store.yAccel[i] += yAccel[i];
+                yAccel[i] = 0;
             }
-        } catch( InterruptedException e ) { }
     }
 }
@@ -0,0 +1,257 @@
+package spcsim.grav2d;
+
+/* Author: Kent Fukuda
+ * Description: Implementation of the Gravity2D simulation environment that moves close pairs of bodies in levi-civita regularized coordinates
+ * Created: 10-16-26
+ * Status: environment class, finished
+ * Dependencies: SimObject, Gravity2D, SpaceObject2D
+ * Licensed under GNU v3, see src/spcsim/SpaceSim.java for more details
+ */
+
+import java.lang.invoke.MethodHandles;
+import java.util.Arrays;
+import spcsim.impl.MainFrame;
+import spcsim.base.EditPane;
+import spcsim.base.SimObject;
+
+public final class Regularized extends Gravity2D {
+    //serialversionuid
+    public static final long serialVersionUID = SimObject.registerParticleClass( MethodHandles.lookup(), "GRZDRG" );
+    //number of bodies summed by each task
+    private static final int BLOCK = 64;
+    //most iterations solving for the regularized time of a step
+    private static final int MAX_ITERATIONS = 100;
+    
+    private double ratioThresh;
+    //regularized partner of every body or -1, and the body pulling each body the hardest
+    private transient int[] partner, pairing, strongest;
+    //accelerations from outside each pair at the end of the last step, reused when the particles were not changed since
+    private transient double[] xCache, yCache;
+    private transient boolean forcesValid;
+    
+    //private constructor
+    private Regularized() {
+        ratioThresh = 0.01;
+        partner = pairing = strongest = new int[0];
+        xCache = yCache = new double[0];
+        forcesValid = false;
+    }
+    
+    //overridden gui method to add threshold for regularizing a pair
+    @Override
+    protected void generateGUI( EditPane editPane, MainFrame application ) {
+        super.generateGUI( editPane, application );
+        editPane.addValueMenuItem( EditPane.CONTROL_TYPE, "Accuracy Threshold", "Set Threshold", () -> ratioThresh, val -> {
+                if( val <= 0 )
+                    throw new IllegalArgumentException( "Threshold must be larger than 0" );
+                ratioThresh = val;
+            } );
+    }
+    
+    //implemented simulation method
+    //kick drift kick where a pair drifts along its exact two body orbit and the rest of the system only enters through the kicks
+    @Override
+    protected void simulate() {
+        store.load( particles );
+        int size = store.size();
+        if( partner.length < size ) {
+            int capacity = store.xPos.length;
+            partner = new int[capacity];
+            pairing = new int[capacity];
+            strongest = new int[capacity];
+            xCache = new double[capacity];
+            yCache = new double[capacity];
+            forcesValid = false;
+        }
+        if( forcesValid && store.unchanged() ) {
+            System.arraycopy( xCache, 0, store.xAccel, 0, size );
+            System.arraycopy( yCache, 0, store.yAccel, 0, size );
+        } else {
+            Arrays.fill( partner, 0, size, -1 );
+            calculateForces();
+            pairUp();
+        }
+        store.kick( timeStep / 2 );
+        for( int i = 0; i < size; i++ )
+            if( partner[i] < 0 ) {
+                store.xPos[i] += store.xVeloc[i] * timeStep;
+                store.yPos[i] += store.yVeloc[i] * timeStep;
+            } else if( i < partner[i] && keplerDrift( i, partner[i], timeStep ) )
+                super.addContact( i, partner[i] );
+        store.clearAccelerations();
+        calculateForces();
+        store.kick( timeStep / 2 );
+        pairUp();
+        System.arraycopy( store.xAccel, 0, xCache, 0, size );
+        System.arraycopy( store.yAccel, 0, yCache, 0, size );
+        forcesValid = true;
+        store.save( particles );
+        super.updateContacts();
+    }
+    
+    
+    //private utility methods
+    //calculates the gravity on every body of the store from every body but its partner and finds the body pulling it the hardest
+    private void calculateForces() {
+        int size = store.size();
+        super.parallelFor( ( size + BLOCK - 1 ) / BLOCK, block -> {
+            double[] xPos = store.xPos, yPos = store.yPos, mass = store.mass, radius = store.radius;
+            for( int i = block * BLOCK; i < Math.min( block * BLOCK + BLOCK, size ); i++ ) {
+                double ax = 0, ay = 0, maxPull = 0;
+                int hardest = -1;
+                for( int j = 0; j < size; j++ ) {
+                    if( j == i )
+                        continue;
+                    double xDiff = xPos[i] - xPos[j], yDiff = yPos[i] - yPos[j];
+                    double distSq = xDiff * xDiff + yDiff * yDiff;
+                    double dist = Math.sqrt( distSq );
+                    if( dist <= radius[i] + radius[j] ) {
+                        if( i < j )
+                            super.addContact( i, j );
+                        continue;
+                    }
+                    if( mass[j] > maxPull * distSq ) {
+                        maxPull = mass[j] / distSq;
+                        hardest = j;
+                    }
+                    if( j != partner[i] ) {
+                        double force = mass[j] / ( distSq * dist );
+                        ax += force * xDiff;
+                        ay += force * yDiff;
+                    }
+                }
+                store.xAccel[i] += SpaceObject2D.OPT_GRAVITY_PULL * ax;
+                store.yAccel[i] += SpaceObject2D.OPT_GRAVITY_PULL * ay;
+                strongest[i] = hardest;
+            }
+        } );
+    }
+    
+    //pairs bodies that pull each other the hardest and are too close for the time step, and moves the force of a changed pair
+    //between the accelerations and the pair
+    private void pairUp() {
+        int size = store.size();
+        for( int i = 0; i < size; i++ ) {
+            int j = strongest[i];
+            pairing[i] = -1;
+            if( j >= 0 && strongest[j] == i ) {
+                double xDiff = store.xPos[i] - store.xPos[j], yDiff = store.yPos[i] - store.yPos[j];
+                double xvDiff = store.xVeloc[i] - store.xVeloc[j], yvDiff = store.yVeloc[i] - store.yVeloc[j];
+                double distSq = xDiff * xDiff + yDiff * yDiff, velocSq = xvDiff * xvDiff + yvDiff * yvDiff;
+                //a pair stays regularized while it is bound so it does not switch back and forth along its orbit
+                if( ratioThresh * distSq < timeStep * timeStep * velocSq || partner[i] == j && 
+                        velocSq / 2 < -SpaceObject2D.OPT_GRAVITY_PULL * ( store.mass[i] + store.mass[j] ) / Math.sqrt( distSq ) )
+                    pairing[i] = j;
+            }
+        }
+        for( int i = 0; i < size; i++ )
+            if( pairing[i] != partner[i] ) {
+                if( partner[i] >= 0 )
+                    pairForce( i, partner[i], 1 );
+                if( pairing[i] >= 0 )
+                    pairForce( i, pairing[i], -1 );
+                partner[i] = pairing[i];
+            }
+    }
+    
+    //adds the gravity of body j on body i to the acceleration of i, multiplied by sign
+    private void pairForce( int i, int j, double sign ) {
+        double xDiff = store.xPos[i] - store.xPos[j], yDiff = store.yPos[i] - store.yPos[j];
+        double distSq = xDiff * xDiff + yDiff * yDiff;
+        double force = sign * SpaceObject2D.OPT_GRAVITY_PULL * store.mass[j] / ( distSq * Math.sqrt( distSq ) );
+        store.xAccel[i] += force * xDiff;
+        store.yAccel[i] += force * yDiff;
+    }
+    
+    //moves a pair along its two body orbit for a time and returns whether the bodies touched on the way
+    //the relative position is z = u^2 in complex numbers, and with dt = r ds the orbit in u is a harmonic oscillator in s
+    private boolean keplerDrift( int i, int j, double time ) {
+        double[] xPos = store.xPos, yPos = store.yPos, xVeloc = store.xVeloc, yVeloc = store.yVeloc;
+        double mass1 = store.mass[i], mass2 = store.mass[j], totalMass = mass1 + mass2;
+        double mu = -SpaceObject2D.OPT_GRAVITY_PULL * totalMass;
+        //center of mass moves in a straight line
+        double xCenter = ( xPos[i] * mass1 + xPos[j] * mass2 ) / totalMass + ( xVeloc[i] * mass1 + xVeloc[j] * mass2 ) / totalMass * time;
+        double yCenter = ( yPos[i] * mass1 + yPos[j] * mass2 ) / totalMass + ( yVeloc[i] * mass1 + yVeloc[j] * mass2 ) / totalMass * time;
+        double xCenterVeloc = ( xVeloc[i] * mass1 + xVeloc[j] * mass2 ) / totalMass, yCenterVeloc = ( yVeloc[i] * mass1 + yVeloc[j] * mass2 ) / totalMass;
+        double zx = xPos[i] - xPos[j], zy = yPos[i] - yPos[j], wx = xVeloc[i] - xVeloc[j], wy = yVeloc[i] - yVeloc[j];
+        double r0 = Math.hypot( zx, zy );
+        //u = sqrt(z) and u' = conj(u) w / 2
+        double ux, uy;
+        if( zx >= 0 ) {
+            ux = Math.sqrt( ( r0 + zx ) / 2 );
+            uy = ux == 0 ? 0 : zy / ( 2 * ux );
+        } else {
+            uy = Math.copySign( Math.sqrt( ( r0 - zx ) / 2 ), zy );
+            ux = zy / ( 2 * uy );
+        }
+        double upx = ( ux * wx + uy * wy ) / 2, upy = ( ux * wy - uy * wx ) / 2;
+        double energy = ( wx * wx + wy * wy ) / 2 - mu / r0;
+        double beta = energy / 2;
+        double eta = ux * upx + uy * upy, zeta = beta * r0 + upx * upx + upy * upy;
+        //solves t(s) = r0 s + eta S^2 + zeta G3 = time, with t increasing since dt/ds = r
+        double[] stumpff = new double[3];
+        double low = 0, high = time / r0;
+        while( regularTime( high, beta, r0, eta, zeta, stumpff ) < time )
+            high *= 2;
+        double s = time / r0;
+        for( int k = 0; k < MAX_ITERATIONS; k++ ) {
+            double error = regularTime( s, beta, r0, eta, zeta, stumpff ) - time;
+            if( Math.abs( error ) <= 1e-15 * time )
+                break;
+            if( error > 0 )
+                high = s;
+            else
+                low = s;
+            double next = s - error / ( r0 + 2 * eta * stumpff[0] * stumpff[1] + zeta * stumpff[1] * stumpff[1] );
+            s = next > low && next < high ? next : ( low + high ) / 2;
+        }
+        regularTime( s, beta, r0, eta, zeta, stumpff );
+        double c = stumpff[0], sn = stumpff[1];
+        double newUx = ux * c + upx * sn, newUy = uy * c + upy * sn;
+        double newUpx = ux * beta * sn + upx * c, newUpy = uy * beta * sn + upy * c;
+        double r = newUx * newUx + newUy * newUy;
+        zx = newUx * newUx - newUy * newUy;
+        zy = 2 * newUx * newUy;
+        wx = 2 * ( newUx * newUpx - newUy * newUpy ) / r;
+        wy = 2 * ( newUx * newUpy + newUy * newUpx ) / r;
+        xPos[i] = xCenter + zx * mass2 / totalMass;
+        yPos[i] = yCenter + zy * mass2 / totalMass;
+        xPos[j] = xCenter - zx * mass1 / totalMass;
+        yPos[j] = yCenter - zy * mass1 / totalMass;
+        xVeloc[i] = xCenterVeloc + wx * mass2 / totalMass;
+        yVeloc[i] = yCenterVeloc + wy * mass2 / totalMass;
+        xVeloc[j] = xCenterVeloc - wx * mass1 / totalMass;
+        yVeloc[j] = yCenterVeloc - wy * mass1 / totalMass;
+        //touching at the end, or passing a pericenter inside the radii on the way
+        double contact = store.radius[i] + store.radius[j];
+        if( r <= contact )
+            return true;
+        boolean passed = eta < 0 && newUx * newUpx + newUy * newUpy >= 0 || beta < 0 && s * Math.sqrt( -beta ) >= Math.PI;
+        if( !passed )
+            return false;
+        double momentum = zx * wy - zy * wx;
+        double eccentricity = Math.sqrt( Math.max( 1 + 2 * energy * momentum * momentum / ( mu * mu ), 0 ) );
+        return momentum * momentum / ( mu * ( 1 + eccentricity ) ) <= contact;
+    }
+    
+    //physical time after regularized time s, filling stumpff with c(s), S(s) and G3(s), the oscillator solutions and the integral of S^2
+    private static double regularTime( double s, double beta, double r0, double eta, double zeta, double[] stumpff ) {
+        double x = beta * s * s;
+        if( Math.abs( x ) < 1e-4 ) {
+            stumpff[0] = 1 + x / 2 * ( 1 + x / 12 * ( 1 + x / 30 ) );
+            stumpff[1] = s * ( 1 + x / 6 * ( 1 + x / 20 * ( 1 + x / 42 ) ) );
+            stumpff[2] = s * s * s * ( 1.0 / 3 + x * ( 1.0 / 15 + x * ( 2.0 / 315 + x / 2835 ) ) );
+        } else {
+            double w = Math.sqrt( Math.abs( beta ) );
+            if( beta < 0 ) {
+                stumpff[0] = Math.cos( w * s );
+                stumpff[1] = Math.sin( w * s ) / w;
+            } else {
+                stumpff[0] = Math.cosh( w * s );
+                stumpff[1] = Math.sinh( w * s ) / w;
+            }
+            stumpff[2] = ( stumpff[0] * stumpff[1] - s ) / ( 2 * beta );
+        }
+        return r0 * s + eta * stumpff[1] * stumpff[1] + zeta * stumpff[2];
+    }
+}
@@ -9,6 +9,8 @@ package spcsim.grav2d;
  */
 
 import java.lang.invoke.MethodHandles;
+import spcsim.impl.MainFrame;
+import spcsim.base.EditPane;
 import spcsim.base.SimObject;
 
 public final class Simple extends Gravity2D {
@@ -18,21 +20,46 @@ public final class Simple extends Gravity2D {
     //private constructor
     private Simple() { }
     
+    //overridden gui method to add integrator settings
+    @Override
+    protected void generateGUI( EditPane editPane, MainFrame application ) {
+        super.generateGUI( editPane, application );
+        super.generateIntegratorGUI( editPane );
+    }
+    
     //implemented simulation method
     @Override
     protected void simulate() {
-        int size = particles.size();
-        for( int i = 0; i < size; i++ ) {
-            SpaceObject2D obj = particles.get( i );
+        store.load( particles );
+        super.integrate( this::calculateForces );
+        store.save( particles );
+        super.updateContacts();
+    }
+    
+    
+    //private utility methods
+    //calculates the gravity between every pair of bodies of the store at their current positions
+    //touching bodies are recorded instead and merged once the step is done
+    private void calculateForces() {
+        int size = store.size();
+        double[] xPos = store.xPos, yPos = store.yPos, mass = store.mass, radius = store.radius;
+        for( int i = 0; i < size; i++ )
             for( int j = i + 1; j < size; j++ ) {
-                if( obj.interact( particles.get( j ) ) < 0 ) {
-                    synchronized( particles ) {
-                        particles.remove( j-- );
-                    }
-                    size--;
+                double xDiff = xPos[i] - xPos[j];
+                double yDiff = yPos[i] - yPos[j];
+                double distSq = xDiff * xDiff + yDiff * yDiff;
+                double dist = Math.sqrt( distSq );
+                if( dist <= radius[i] + radius[j] ) {
+                    super.addContact( i, j );
+                    continue;
                 }
+                double force = SpaceObject2D.OPT_GRAVITY_PULL / ( distSq * dist );
+                double forceX = force * xDiff;
+                double forceY = force * yDiff;
+                store.xAccel[i] += forceX * mass[j];
+                store.yAccel[i] += forceY * mass[j];
+                store.xAccel[j] -= forceX * mass[i];
+                store.yAccel[j] -= forceY * mass[i];
             }
-            obj.update( timeStep );
-        }
     }
 }
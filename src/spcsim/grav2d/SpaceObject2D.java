@@ -21,7 +21,7 @@ public final class SpaceObject2D extends Object2D<SpaceObject2D> {
     //serialversionuid
     public static final long serialVersionUID = SimObject.registerParticleClass( MethodHandles.lookup(), "SPCOZD" );
     //gravity constant
-    private static final double OPT_GRAVITY_PULL = Units.GRAVITY_CONSTANT * Units.EARTH_MASS / 
+    static final double OPT_GRAVITY_PULL = Units.GRAVITY_CONSTANT * Units.EARTH_MASS / 
             Units.EARTH_RADIUS / Units.EARTH_RADIUS / Units.EARTH_RADIUS * Units.DAY_LENGTH * Units.DAY_LENGTH;
     
     //fields for a spaceobject
@@ -67,21 +67,7 @@ public final class SpaceObject2D extends Object2D<SpaceObject2D> {
         //test for contact between particles
         if( dist <= radius + p.radius ) {
             //collision simulation
-            double newMass = mass + p.mass;
-            double oldXMom = xVeloc * mass;
-            double oldYMom = yVeloc * mass;
-            double newXMom = p.xVeloc * p.mass + oldXMom;
-            double newYMom = p.yVeloc * p.mass + oldYMom;
-            if( p.mass > mass ) {
-                name = p.name;
-                super.color( p.color() );
-            }
-            xVeloc = newXMom / newMass;
-            yVeloc = newYMom / newMass;
-            xPos = ( xPos * mass + p.xPos * p.mass ) / newMass;
-            yPos = ( yPos * mass + p.yPos * p.mass ) / newMass;
-            radius = Math.pow( radius * radius * radius + p.radius * p.radius * p.radius, 0.33333333333333333333333 );
-            mass = newMass;
+            merge( p );
             return -1;
         } else {
             //normal gravity calculations
@@ -96,6 +82,53 @@ public final class SpaceObject2D extends Object2D<SpaceObject2D> {
         return distSq;
     }
     
+    //merges particle p into this particle conserving mass and momentum
+    void merge( SpaceObject2D p ) {
+        double newMass = mass + p.mass;
+        double oldXMom = xVeloc * mass;
+        double oldYMom = yVeloc * mass;
+        double newXMom = p.xVeloc * p.mass + oldXMom;
+        double newYMom = p.yVeloc * p.mass + oldYMom;
+        if( p.mass > mass ) {
+            name = p.name;
+            super.color( p.color() );
+        }
+        xVeloc = newXMom / newMass;
+        yVeloc = newYMom / newMass;
+        xPos = ( xPos * mass + p.xPos * p.mass ) / newMass;
+        yPos = ( yPos * mass + p.yPos * p.mass ) / newMass;
+        radius = Math.pow( radius * radius * radius + p.radius * p.radius * p.radius, 0.33333333333333333333333 );
+        mass = newMass;
+    }
+    
+    //merges a group of particles into this particle at once conserving mass and momentum, naming it after the heaviest
+    void merge( SpaceObject2D[] group, int count ) {
+        double newMass = mass, xMom = xVeloc * mass, yMom = yVeloc * mass;
+        double xMass = xPos * mass, yMass = yPos * mass, volume = radius * radius * radius;
+        SpaceObject2D heaviest = this;
+        for( int i = 0; i < count; i++ ) {
+            SpaceObject2D p = group[i];
+            newMass += p.mass;
+            xMom += p.xVeloc * p.mass;
+            yMom += p.yVeloc * p.mass;
+            xMass += p.xPos * p.mass;
+            yMass += p.yPos * p.mass;
+            volume += p.radius * p.radius * p.radius;
+            if( p.mass > heaviest.mass )
+                heaviest = p;
+        }
+        if( heaviest != this ) {
+            name = heaviest.name;
+            super.color( heaviest.color() );
+        }
+        xVeloc = xMom / newMass;
+        yVeloc = yMom / newMass;
+        xPos = xMass / newMass;
+        yPos = yMass / newMass;
+        radius = Math.pow( volume, 0.33333333333333333333333 );
+        mass = newMass;
+    }
+    
     //makes obj1 and obj2 orbit each other with a certain eccentricity
     public static void orbit( SpaceObject2D obj1, SpaceObject2D obj2, double eccentricity ) {
         if( 0 <= eccentricity && eccentricity < 1 ) {
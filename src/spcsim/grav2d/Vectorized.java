@@ -0,0 +1,64 @@
+package spcsim.grav2d;
+
+/* Author: Kent Fukuda
+ * Description: Implementation of the Gravity2D simulation environment that sums gravity directly with a vectorized kernel
+ * Created: 10-16-26
+ * Status: environment class, finished
+ * Dependencies: SimObject, Gravity2D, SpaceObject2D, GravityKernel
+ * Licensed under GNU v3, see src/spcsim/SpaceSim.java for more details
+ */
+
+import java.lang.invoke.MethodHandles;
+import spcsim.impl.MainFrame;
+import spcsim.base.EditPane;
+import spcsim.base.SimObject;
+import spcsim.impl.GravityKernel;
+
+public final class Vectorized extends Gravity2D {
+    //serialversionuid
+    public static final long serialVersionUID = SimObject.registerParticleClass( MethodHandles.lookup(), "GRZDVC" );
+    //number of bodies summed by each task
+    private static final int BLOCK = 64;
+    
+    private transient final GravityKernel kernel;
+    
+    //private constructor
+    private Vectorized() {
+        kernel = GravityKernel.create();
+    }
+    
+    //overridden gui method to add precision settings
+    @Override
+    protected void generateGUI( EditPane editPane, MainFrame application ) {
+        super.generateGUI( editPane, application );
+        super.generateIntegratorGUI( editPane );
+        super.generatePrecisionGUI( editPane, kernel, SpaceObject2D.OPT_GRAVITY_PULL );
+    }
+    
+    //implemented simulation method
+    @Override
+    protected void simulate() {
+        store.load( particles );
+        super.integrate( this::calculateForces );
+        store.save( particles );
+        super.updateContacts();
+    }
+    
+    
+    //private utility methods
+    //calculates the gravity on every body of the store at its current position
+    private void calculateForces() {
+        int size = store.size();
+        boolean single = super.singlePrecision;
+        if( single )
+            store.toSingle();
+        GravityKernel active = super.kernel( kernel );
+        super.parallelFor( ( size + BLOCK - 1 ) / BLOCK, block -> {
+            int from = block * BLOCK, to = Math.min( from + BLOCK, size );
+            if( single )
+                active.accelerateSingle( store, from, to, SpaceObject2D.OPT_GRAVITY_PULL, super::addContact );
+            else
+                active.accelerate( store, from, to, SpaceObject2D.OPT_GRAVITY_PULL, super::addContact );
+        } );
+    }
+}
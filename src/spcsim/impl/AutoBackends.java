@@ -0,0 +1,119 @@
+package spcsim.impl;
+
+/* Author: Kent Fukuda
+ * Description: Force backends the auto engines switch between, picked by the timings of a calibration for the number of bodies
+ * Created: 10-16-26
+ * Status: utility class, finished
+ * Dependencies: Calibration, GravityKernel, QuadTree, ParticleStore, WorkerPool, Object2D, Logger
+ * Licensed under GNU v3, see src/spcsim/SpaceSim.java for more details
+ */
+
+import java.util.function.Supplier;
+import javax.swing.JOptionPane;
+import spcsim.base.EditPane;
+import spcsim.base.Logger;
+
+public final class AutoBackends {
+    
+    //backends to switch between, and the number of bodies handled by each of their tasks
+    private static final int DIRECT = 0, PARALLEL = 1, TREE = 2;
+    private static final String[] NAMES = { "Direct", "Parallel", "Tree" };
+    private static final int BLOCK = 64;
+    //particle count from which deterministic mode uses the tree backend, fixed since the calibrated crossover depends on the machine
+    private static final int DETERMINISTIC_TREE_COUNT = 4096;
+    
+    private final Calibration.Shared calibration;
+    private final Supplier<? extends Object2D> factory;
+    //kernel used in deterministic mode, and the kernel and tree of the backends, made when first used
+    private final GravityKernel scalarKernel;
+    private GravityKernel kernel;
+    private QuadTree tree;
+    private int[] order;
+    //backend in use, read by the report
+    private volatile int current;
+    
+    //constructor, factory makes the bodies the backends are timed on
+    public AutoBackends( Calibration.Shared calibration, Supplier<? extends Object2D> factory ) {
+        this.calibration = calibration;
+        this.factory = factory;
+        scalarKernel = GravityKernel.scalar();
+        kernel = null;
+        tree = null;
+        order = new int[0];
+        current = DIRECT;
+    }
+    
+    
+    //adds the calibration items to the menu of an engine
+    public void generateGUI( EditPane editPane ) {
+        editPane.addMenuItem( EditPane.CONTROL_TYPE, "Recalibrate", a -> calibration.reset() );
+        editPane.addMenuItem( EditPane.CONTROL_TYPE, "Calibration Report", a -> {
+            Calibration timings = calibration.peek();
+            String report = timings == null ? "Not calibrated yet" : "Current backend: " + timings.name( current ) + "\n" + timings.report();
+            Logger.logMessage( report );
+            JOptionPane.showMessageDialog( null, report, "Calibration Report", JOptionPane.INFORMATION_MESSAGE );
+        } );
+    }
+    
+    //picks the backend expected fastest for a number of bodies, measuring the backends when the calibration holds no timings yet
+    //every backend works on the same store, so switching between ticks keeps the whole state
+    public int choose( int size, double pull, double theta, boolean deterministic ) {
+        Calibration timings = calibration.get( () -> {
+            Logger.logMessage( "Calibrating the force backends" );
+            return Calibration.measure( factory, NAMES, ( bodies, contacts ) -> forces( DIRECT, bodies, pull, theta, deterministic, contacts ),
+                    ( bodies, contacts ) -> forces( PARALLEL, bodies, pull, theta, deterministic, contacts ),
+                    ( bodies, contacts ) -> forces( TREE, bodies, pull, theta, deterministic, contacts ) );
+        } );
+        int best;
+        //in deterministic mode the direct and parallel backends sum the same rows with the same kernel and give the same result, so only
+        //the change of force law to the tree is made at a fixed count instead of a timing of the machine and its number of workers
+        if( deterministic )
+            best = size >= DETERMINISTIC_TREE_COUNT ? TREE : timings.best( size, Math.min( current, PARALLEL ), TREE );
+        else
+            best = timings.best( size, current );
+        if( best != current ) {
+            Logger.logMessage( "Switching to the " + NAMES[best] + " backend at " + size + " particles" );
+            current = best;
+        }
+        return best;
+    }
+    
+    //adds pull * mass / dist^3 * diff from every body of a store to every other with a backend, theta being the opening angle of the tree
+    //touching pairs are passed to contacts
+    public void forces( int backend, ParticleStore bodies, double pull, double theta, boolean deterministic, GravityKernel.ContactListener contacts ) {
+        int size = bodies.size();
+        switch( backend ) {
+            case TREE :
+                //approximates distant bodies with a quadtree, walking bodies in tree order on the worker pool
+                if( tree == null )
+                    tree = new QuadTree( 8 );
+                if( order.length < size )
+                    order = new int[ Math.max( size, order.length * 2 ) ];
+                QuadTree active = tree;
+                int[] walk = order;
+                active.update( size, bodies.xPos, bodies.yPos, bodies.mass, bodies.radius );
+                active.bodyOrder( walk );
+                WorkerPool.shared().run( ( size + BLOCK - 1 ) / BLOCK, block -> {
+                    double[] accel = new double[2];
+                    for( int k = block * BLOCK; k < Math.min( block * BLOCK + BLOCK, size ); k++ ) {
+                        int i = walk[k];
+                        active.gravity( i, theta, pull, accel, j -> contacts.touch( i, j ) );
+                        bodies.xAccel[i] += accel[0];
+                        bodies.yAccel[i] += accel[1];
+                    }
+                } );
+                break;
+            case PARALLEL :
+                //every pair in row blocks on the worker pool, with the scalar kernel in deterministic mode
+                if( kernel == null )
+                    kernel = GravityKernel.create();
+                GravityKernel rows = deterministic ? scalarKernel : kernel;
+                WorkerPool.shared().run( ( size + BLOCK - 1 ) / BLOCK, block ->
+                        rows.accelerate( bodies, block * BLOCK, Math.min( block * BLOCK + BLOCK, size ), pull, contacts ) );
+                break;
+            default :
+                //every pair on the calling thread, without the cost of starting the workers
+                scalarKernel.accelerate( bodies, 0, size, pull, contacts );
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package spcsim.impl;
+
+/* Author: Kent Fukuda
+ * Description: Orthogonal recursive bisection of the plane into domains holding about the same weight of points
+ * Created: 10-16-26
+ * Status: utility class, finished
+ * Dependencies: none
+ * Licensed under GNU v3, see src/spcsim/SpaceSim.java for more details
+ */
+
+public final class Bisection {
+    
+    //cut of every inner node of the bisection, whether it cuts along x, and the nodes on its low and high side
+    //nodes below zero are the domains -1 - node
+    private double[] cut;
+    private boolean[] alongX;
+    private int[] low, high;
+    private int nodeCount, domainCount;
+    //box of every domain, unbounded towards the outside of the plane
+    private double[] minX, maxX, minY, maxY;
+    //indices of the points, partitioned in place as the plane is cut
+    private int[] index;
+    //point arrays of the last split
+    private double[] xPos, yPos, weight;
+    
+    //constructor
+    public Bisection() {
+        cut = new double[0];
+        alongX = new boolean[0];
+        low = high = index = new int[0];
+        minX = maxX = minY = maxY = new double[0];
+        split( 0, null, null, null, 1 );
+    }
+    
+    
+    //cuts the plane into domains so that each holds about the same weight of the first count points
+    //every cut is made across the longer side of the points it divides, weight may be null for points of equal weight
+    public void split( int count, double[] xPos, double[] yPos, double[] weight, int domains ) {
+        if( domains < 1 )
+            throw new IllegalArgumentException( "There must be at least one domain" );
+        this.xPos = xPos;
+        this.yPos = yPos;
+        this.weight = weight;
+        if( cut.length < domains ) {
+            cut = new double[domains];
+            alongX = new boolean[domains];
+            low = new int[domains];
+            high = new int[domains];
+            minX = new double[domains];
+            maxX = new double[domains];
+            minY = new double[domains];
+            maxY = new double[domains];
+        }
+        if( index.length < count )
+            index = new int[ Math.max( count, index.length * 2 ) ];
+        for( int i = 0; i < count; i++ )
+            index[i] = i;
+        nodeCount = 0;
+        domainCount = 0;
+        divide( 0, count, domains, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY );
+    }
+    
+    //number of domains of the last split
+    public int domains() {
+        return domainCount;
+    }
+    
+    //domain holding a point. points on a cut belong to its high side
+    public int domainOf( double x, double y ) {
+        if( nodeCount == 0 )
+            return 0;
+        int node = 0;
+        while( node >= 0 )
+            node = ( alongX[node] ? x : y ) < cut[node] ? low[node] : high[node];
+        return -1 - node;
+    }
+    
+    //distance from a point to the box of a domain, 0 inside it
+    public double distance( int domain, double x, double y ) {
+        double xOut = Math.max( Math.max( minX[domain] - x, x - maxX[domain] ), 0 );
+        double yOut = Math.max( Math.max( minY[domain] - y, y - maxY[domain] ), 0 );
+        return Math.sqrt( xOut * xOut + yOut * yOut );
+    }
+    
+    //fills found with the domains whose boxes lie within a distance of a point and returns their number
+    //found must have room for every domain
+    public int domainsNear( double x, double y, double distance, int[] found ) {
+        return near( nodeCount == 0 ? -1 : 0, x, y, distance, found, 0 );
+    }
+    
+    //distance from a point inside the box of a domain to the nearest side of it, no other domain is closer to the point than this
+    public double inset( int domain, double x, double y ) {
+        return Math.min( Math.min( x - minX[domain], maxX[domain] - x ), Math.min( y - minY[domain], maxY[domain] - y ) );
+    }
+    
+    
+    //private utility methods
+    //splits the points from start to end and their box into a number of domains, returning the node made for them
+    private int divide( int start, int end, int domains, double boxMinX, double boxMaxX, double boxMinY, double boxMaxY ) {
+        if( domains == 1 ) {
+            int domain = domainCount++;
+            minX[domain] = boxMinX;
+            maxX[domain] = boxMaxX;
+            minY[domain] = boxMinY;
+            maxY[domain] = boxMaxY;
+            return -1 - domain;
+        }
+        //cuts across the longer side of the points themselves, since the box is unbounded at the edges of the plane
+        double pointMinX = Double.POSITIVE_INFINITY, pointMaxX = Double.NEGATIVE_INFINITY;
+        double pointMinY = Double.POSITIVE_INFINITY, pointMaxY = Double.NEGATIVE_INFINITY;
+        double total = 0;
+        for( int k = start; k < end; k++ ) {
+            int i = index[k];
+            pointMinX = Math.min( pointMinX, xPos[i] );
+            pointMaxX = Math.max( pointMaxX, xPos[i] );
+            pointMinY = Math.min( pointMinY, yPos[i] );
+            pointMaxY = Math.max( pointMaxY, yPos[i] );
+            total += weightOf( i );
+        }
+        boolean cutX = !( pointMaxY - pointMinY > pointMaxX - pointMinX );
+        double[] coord = cutX ? xPos : yPos;
+        int lowDomains = domains / 2;
+        double value;
+        if( start == end )
+            value = cutX ? middle( boxMinX, boxMaxX ) : middle( boxMinY, boxMaxY );
+        else
+            value = select( coord, start, end, total * lowDomains / domains );
+        //points below the cut go first
+        int split = start;
+        for( int k = start; k < end; k++ )
+            if( coord[ index[k] ] < value ) {
+                int swap = index[k];
+                index[k] = index[split];
+                index[split++] = swap;
+            }
+        int node = nodeCount++;
+        cut[node] = value;
+        alongX[node] = cutX;
+        if( cutX ) {
+            low[node] = divide( start, split, lowDomains, boxMinX, value, boxMinY, boxMaxY );
+            high[node] = divide( split, end, domains - lowDomains, value, boxMaxX, boxMinY, boxMaxY );
+        } else {
+            low[node] = divide( start, split, lowDomains, boxMinX, boxMaxX, boxMinY, value );
+            high[node] = divide( split, end, domains - lowDomains, boxMinX, boxMaxX, value, boxMaxY );
+        }
+        return node;
+    }
+    
+    //finds the smallest coordinate of the points from start to end that the points below it weigh at least target, or the largest one
+    //when there is none. weighted quickselect, reordering the indices in the range
+    private double select( double[] coord, int start, int end, double target ) {
+        int lo = start, hi = end;
+        //smallest coordinate found so far that the points below it weigh enough
+        double found = Double.NaN;
+        while( lo < hi ) {
+            double pivot = coord[ index[ ( lo + hi ) >>> 1 ] ];
+            //three way partition into below, equal and above the pivot
+            int less = lo, more = hi, k = lo;
+            double lessWeight = 0, equalWeight = 0;
+            while( k < more ) {
+                int i = index[k];
+                if( coord[i] < pivot ) {
+                    lessWeight += weightOf( i );
+                    index[k++] = index[less];
+                    index[less++] = i;
+                } else if( coord[i] > pivot ) {
+                    index[k] = index[--more];
+                    index[more] = i;
+                } else {
+                    equalWeight += weightOf( i );
+                    k++;
+                }
+            }
+            if( target <= lessWeight ) {
+                found = pivot;
+                hi = less;
+            } else if( target <= lessWeight + equalWeight ) {
+                //the smallest coordinate above the pivot
+                for( k = more; k < hi; k++ )
+                    found = k == more ? coord[ index[k] ] : Math.min( found, coord[ index[k] ] );
+                return Double.isNaN( found ) ? pivot : found;
+            } else {
+                target -= lessWeight + equalWeight;
+                lo = more;
+                found = Double.isNaN( found ) && lo == hi ? pivot : found;
+            }
+        }
+        return found;
+    }
+    
+    //descends the nodes on the sides of the cuts within a distance of a point, adding the domains found after count and returning the new count
+    private int near( int node, double x, double y, double distance, int[] found, int count ) {
+        if( node < 0 ) {
+            if( distance( -1 - node, x, y ) <= distance )
+                found[count++] = -1 - node;
+            return count;
+        }
+        double coord = alongX[node] ? x : y;
+        if( coord - distance < cut[node] )
+            count = near( low[node], x, y, distance, found, count );
+        if( coord + distance >= cut[node] )
+            count = near( high[node], x, y, distance, found, count );
+        return count;
+    }
+    
+    //weight of a point
+    private double weightOf( int i ) {
+        return weight == null ? 1 : weight[i];
+    }
+    
+    //middle of a range that may be unbounded
+    private static double middle( double min, double max ) {
+        if( Double.isInfinite( min ) || Double.isInfinite( max ) )
+            return Double.isInfinite( min ) ? ( Double.isInfinite( max ) ? 0 : max ) : min;
+        return ( min + max ) / 2;
+    }
+}
@@ -0,0 +1,103 @@
+package spcsim.impl;
+
+/* Author: Kent Fukuda
+ * Description: Sweep and prune collision broad phase finding the touching pairs of 2D particles without a pair loop
+ * Created: 10-16-26
+ * Status: utility class, finished
+ * Dependencies: ParticleStore, GravityKernel
+ * Licensed under GNU v3, see src/spcsim/SpaceSim.java for more details
+ */
+
+public final class BroadPhase {
+    
+    //most moves the insertion sort may make per body before the order is sorted from scratch
+    private static final int MAX_MOVES = 8;
+    
+    //bodies sorted by the left edge of their bounds, kept between calls since the order barely changes from tick to tick
+    private int[] order, buffer;
+    private double[] left;
+    private int count;
+    
+    //constructor
+    public BroadPhase() {
+        order = buffer = new int[0];
+        left = new double[0];
+        count = 0;
+    }
+    
+    
+    //passes every pair of bodies in the store whose distance is at most the sum of their radii to contacts, lower index first
+    public void findContacts( ParticleStore store, GravityKernel.ContactListener contacts ) {
+        int size = store.size();
+        double[] xPos = store.xPos, yPos = store.yPos, radius = store.radius;
+        if( left.length < size ) {
+            int capacity = Math.max( size, left.length * 2 );
+            left = new double[capacity];
+            order = new int[capacity];
+            buffer = new int[capacity];
+        }
+        for( int i = 0; i < size; i++ )
+            left[i] = xPos[i] - radius[i];
+        if( count != size || !insertionSort( size ) ) {
+            for( int i = 0; i < size; i++ )
+                order[i] = i;
+            mergeSort( size );
+            count = size;
+        }
+        //sweeps along x, comparing each body only with the bodies whose bounds start before its own end
+        for( int a = 0; a < size; a++ ) {
+            int i = order[a];
+            double right = xPos[i] + radius[i];
+            for( int b = a + 1; b < size && left[ order[b] ] <= right; b++ ) {
+                int j = order[b];
+                double reach = radius[i] + radius[j];
+                double yDiff = yPos[i] - yPos[j];
+                if( Math.abs( yDiff ) > reach )
+                    continue;
+                double xDiff = xPos[i] - xPos[j];
+                if( Math.sqrt( xDiff * xDiff + yDiff * yDiff ) <= reach )
+                    contacts.touch( Math.min( i, j ), Math.max( i, j ) );
+            }
+        }
+    }
+    
+    
+    //private utility methods
+    //sorts the order of the last call again, giving up once the bodies moved too far for it to be cheap
+    private boolean insertionSort( int size ) {
+        long moves = 0, maxMoves = (long)MAX_MOVES * size;
+        for( int a = 1; a < size; a++ ) {
+            int body = order[a];
+            double key = left[body];
+            int b = a - 1;
+            while( b >= 0 && left[ order[b] ] > key ) {
+                order[b + 1] = order[b];
+                b--;
+                if( ++moves > maxMoves ) {
+                    order[b + 1] = body;
+                    return false;
+                }
+            }
+            order[b + 1] = body;
+        }
+        return true;
+    }
+    
+    //sorts the order by the left edges from scratch with a bottom up merge sort
+    private void mergeSort( int size ) {
+        int[] from = order, to = buffer;
+        for( int width = 1; width < size; width *= 2 ) {
+            for( int low = 0; low < size; low += 2 * width ) {
+                int mid = Math.min( low + width, size ), high = Math.min( low + 2 * width, size );
+                int a = low, b = mid;
+                for( int k = low; k < high; k++ )
+                    to[k] = b >= high || a < mid && left[ from[a] ] <= left[ from[b] ] ? from[a++] : from[b++];
+            }
+            int[] swap = from;
+            from = to;
+            to = swap;
+        }
+        order = from;
+        buffer = to;
+    }
+}
@@ -0,0 +1,224 @@
+package spcsim.impl;
+
+/* Author: Kent Fukuda
+ * Description: Microbenchmark timing the force backends of an engine on the current machine to pick the fastest one for a particle count
+ * Created: 10-16-26
+ * Status: utility class, finished
+ * Dependencies: ParticleStore, GravityKernel, Object2D
+ * Licensed under GNU v3, see src/spcsim/SpaceSim.java for more details
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+public final class Calibration {
+    
+    //particle counts the backends are timed at
+    private static final int[] COUNTS = { 64, 256, 1024, 4096 };
+    //calls of every backend before timing starts so the timings are of compiled code, vector code needs hundreds before it is compiled
+    private static final int WARMUP_CALLS = 1000;
+    //rounds of measurements taken at every count
+    private static final int ROUNDS = 2;
+    //most time the warmup of a backend may take, the time each measurement is repeated for, 
+    //and the time of one call past which a backend is not timed at larger counts, in nanoseconds
+    private static final long WARMUP_TIME = 2_000_000_000L, MEASURE_TIME = 10_000_000, GIVE_UP_TIME = 100_000_000;
+    //radius of the disk the sample particles are placed in
+    private static final double SAMPLE_RADIUS = 400;
+    //fraction by which another backend must be expected faster before the current one is left, so counts near a crossover do not flip back and forth
+    private static final double SWITCH_MARGIN = 0.1;
+    //largest particle count the crossover points are searched up to
+    private static final int MAX_COUNT = 1 << 22;
+    
+    //force calculation of a backend on every particle of a loaded store
+    @FunctionalInterface
+    public interface Backend {
+        void forces( ParticleStore store, GravityKernel.ContactListener contacts );
+    }
+    
+    //calibration shared by every environment of a kind, measured by the first one that needs it
+    //the measurement holds no lock and is published through a future, so looking at the calibration never waits for one in progress
+    public static final class Shared {
+        private final AtomicReference<CompletableFuture<Calibration>> current;
+        
+        public Shared() {
+            current = new AtomicReference<>();
+        }
+        
+        //returns the calibration, measuring it on the calling thread when there is none or waiting for another thread measuring it
+        public Calibration get( Supplier<Calibration> measure ) {
+            while( true ) {
+                CompletableFuture<Calibration> future = current.get();
+                if( future != null )
+                    return future.join();
+                CompletableFuture<Calibration> mine = new CompletableFuture<>();
+                if( current.compareAndSet( null, mine ) ) {
+                    try {
+                        Calibration calibration = measure.get();
+                        mine.complete( calibration );
+                        return calibration;
+                    } catch( RuntimeException|Error e ) {
+                        current.compareAndSet( mine, null );
+                        mine.completeExceptionally( e );
+                        throw e;
+                    }
+                }
+            }
+        }
+        
+        //returns the calibration, or null when there is none or it is still being measured
+        public Calibration peek() {
+            CompletableFuture<Calibration> future = current.get();
+            return future != null && future.isDone() && !future.isCompletedExceptionally() ? future.join() : null;
+        }
+        
+        //drops the calibration so the next environment to need it measures again
+        public void reset() {
+            current.set( null );
+        }
+    }
+    
+    private final String[] names;
+    //nanoseconds per call of each backend at each count, infinite when it was not timed
+    private final double[][] times;
+    
+    //constructor
+    private Calibration( String[] names, double[][] times ) {
+        this.names = names;
+        this.times = times;
+    }
+    
+    
+    //times every backend on random particles made by factory, names labels the backends in the report
+    public static Calibration measure( Supplier<? extends Object2D> factory, String[] names, Backend... backends ) {
+        Random random = new Random( 1 );
+        List<Object2D> sample = new ArrayList<>();
+        ParticleStore store = new ParticleStore();
+        double[][] times = new double[ backends.length ][ COUNTS.length ];
+        addSample( sample, COUNTS[ COUNTS.length - 1 ], factory, random );
+        store.load( sample.subList( 0, COUNTS[0] ) );
+        for( Backend backend : backends ) {
+            long start = System.nanoTime();
+            for( int i = 0; i < WARMUP_CALLS && System.nanoTime() - start < WARMUP_TIME; i++ ) {
+                store.clearAccelerations();
+                backend.forces( store, ( index1, index2 ) -> { } );
+            }
+        }
+        //the lowest of several rounds, since compilation and other programs slow down single measurements
+        for( double[] time : times )
+            Arrays.fill( time, Double.POSITIVE_INFINITY );
+        for( int round = 0; round < ROUNDS; round++ )
+            for( int c = 0; c < COUNTS.length; c++ ) {
+                store.load( sample.subList( 0, COUNTS[c] ) );
+                for( int b = 0; b < backends.length; b++ )
+                    if( c == 0 || times[b][ c - 1 ] <= GIVE_UP_TIME )
+                        times[b][c] = Math.min( times[b][c], time( backends[b], store, MEASURE_TIME ) );
+            }
+        return new Calibration( names, times );
+    }
+    
+    
+    //index of the backend expected to be fastest for a number of particles, the first of the fastest on a tie
+    public int best( int count ) {
+        return fastest( count, times.length );
+    }
+    
+    //backend to use for a number of particles when current is in use, which is kept unless another is clearly faster
+    public int best( int count, int current ) {
+        return best( count, current, times.length );
+    }
+    
+    //same as best( count, current ) choosing among the first backends only
+    public int best( int count, int current, int backends ) {
+        int best = fastest( count, backends );
+        return estimate( best, count ) < ( 1 - SWITCH_MARGIN ) * estimate( current, count ) ? best : current;
+    }
+    
+    //name of a backend
+    public String name( int backend ) {
+        return names[backend];
+    }
+    
+    //creates a report of the timings and the particle counts where the fastest backend changes
+    public String report() {
+        StringBuilder report = new StringBuilder( "Milliseconds per force calculation" );
+        for( int c = 0; c < COUNTS.length; c++ ) {
+            report.append( "\n" ).append( COUNTS[c] ).append( " particles:" );
+            for( int b = 0; b < times.length; b++ )
+                report.append( String.format( " %s %.3f", names[b], times[b][c] / 1e6 ) );
+        }
+        report.append( "\nFastest backend" );
+        int last = -1;
+        //steps of an eighth of a doubling
+        for( double count = 1; count <= MAX_COUNT; count *= 1.0905077326652577 ) {
+            int best = best( (int)count );
+            if( best != last )
+                report.append( "\nFrom " ).append( (int)count ).append( " particles: " ).append( names[best] );
+            last = best;
+        }
+        return report.toString();
+    }
+    
+    
+    //private utility methods
+    //index of the fastest of the first backends for a number of particles, the first of the fastest on a tie
+    private int fastest( int count, int backends ) {
+        int best = 0;
+        double bestTime = estimate( 0, count );
+        for( int b = 1; b < backends; b++ ) {
+            double time = estimate( b, count );
+            if( time < bestTime ) {
+                best = b;
+                bestTime = time;
+            }
+        }
+        return best;
+    }
+    
+    //estimates the time of a backend for a number of particles from the timings around it on a log log scale
+    //the end segments are extended past the timed counts
+    private double estimate( int backend, double count ) {
+        double[] time = times[backend];
+        int c = 1;
+        while( c < COUNTS.length - 1 && COUNTS[c] < count )
+            c++;
+        if( Double.isInfinite( time[c] ) )
+            return count <= COUNTS[ c - 1 ] ? time[ c - 1 ] : Double.POSITIVE_INFINITY;
+        //no backend gets faster with more particles, whatever noise the timings have
+        double slope = Math.max( Math.log( time[c] / time[ c - 1 ] ) / Math.log( (double)COUNTS[c] / COUNTS[ c - 1 ] ), 0 );
+        return time[c] * Math.pow( Math.max( count, 1 ) / COUNTS[c], slope );
+    }
+    
+    //runs a backend on the store repeatedly for at least a time and returns the average nanoseconds per call
+    private static double time( Backend backend, ParticleStore store, long minTime ) {
+        GravityKernel.ContactListener ignore = ( index1, index2 ) -> { };
+        long start = System.nanoTime(), elapsed;
+        int calls = 0;
+        do {
+            store.clearAccelerations();
+            backend.forces( store, ignore );
+            calls++;
+            elapsed = System.nanoTime() - start;
+        } while( elapsed < minTime );
+        return (double)elapsed / calls;
+    }
+    
+    //adds particles from factory at random places of the sample disk until the sample has count particles, a sample of a smaller count
+    //is the start of the list
+    private static void addSample( List<Object2D> sample, int count, Supplier<? extends Object2D> factory, Random random ) {
+        while( sample.size() < count ) {
+            Object2D obj = factory.get();
+            double angle = random.nextDouble() * 2 * Math.PI, dist = Math.sqrt( random.nextDouble() ) * SAMPLE_RADIUS;
+            obj.mass = 1;
+            obj.radius = 0.5;
+            obj.xPos = dist * Math.cos( angle );
+            obj.yPos = dist * Math.sin( angle );
+            obj.xVeloc = obj.yVeloc = 0;
+            sample.add( obj );
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package spcsim.impl;
+
+/* Author: Kent Fukuda
+ * Description: Headless runner of many perturbed copies of a scene as independent environments spread over the cores
+ * Created: 10-16-26
+ * Status: utility class, finished
+ * Dependencies: SimObject, Env2D, Object2D, WorkerPool, Logger
+ * Licensed under GNU v3, see src/spcsim/SpaceSim.java for more details
+ */
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import spcsim.base.Logger;
+import spcsim.base.SimObject;
+
+public final class Ensemble {
+    
+    //options and their defaults, given on the command line as name=value
+    private static final String[][] DEFAULTS = {
+        { "engine", "grav2d.Vectorized" },
+        { "asset", "Solar System" },
+        { "members", "100" },
+        { "ticks", "10000" },
+        { "step", "0.04" },
+        { "perturb", "1e-6" },
+        { "seed", "1" },
+        { "threads", Integer.toString( Runtime.getRuntime().availableProcessors() ) },
+        { "out", "ensemble.csv" }
+    };
+    private static final String HEADER = "member,seed,bodies_start,bodies_end,max_distance_start,max_distance_end,kinetic_start,kinetic_end,wall_ms";
+    
+    private final Class<? extends Env2D<?>> engine;
+    private final SimObject[] scene;
+    private final int members, ticks;
+    private final double step, perturb;
+    private final long seed;
+    //summary line of each member, filled in as members finish
+    private final String[] results;
+    private final AtomicInteger finished;
+    
+    //constructor
+    private Ensemble( Class<? extends Env2D<?>> engine, SimObject[] scene, int members, int ticks, double step, double perturb, long seed ) {
+        this.engine = engine;
+        this.scene = scene;
+        this.members = members;
+        this.ticks = ticks;
+        this.step = step;
+        this.perturb = perturb;
+        this.seed = seed;
+        results = new String[members];
+        finished = new AtomicInteger();
+    }
+    
+    
+    //runs an ensemble described by name=value options and writes one summary line per member to the output file
+    //returns whether every member ran and the summary was written
+    public static boolean run( String[] args ) {
+        Map<String,String> options = new HashMap<>();
+        for( String[] option : DEFAULTS )
+            options.put( option[0], option[1] );
+        for( String arg : args ) {
+            int split = arg.indexOf( '=' );
+            if( split < 0 || !options.containsKey( arg.substring( 0, split ) ) ) {
+                Logger.logError( "Unknown ensemble option " + arg + ", options are " + Arrays.toString( Arrays.stream( DEFAULTS ).map( o -> o[0] ).toArray() ) );
+                return false;
+            }
+            options.put( arg.substring( 0, split ), arg.substring( split + 1 ) );
+        }
+        Ensemble ensemble;
+        int threads;
+        try {
+            String name = options.get( "engine" );
+            Class<?> cls = Class.forName( name.startsWith( "spcsim." ) ? name : "spcsim." + name );
+            if( !Env2D.class.isAssignableFrom( cls ) )
+                throw new IllegalArgumentException( name + " is not a 2D environment" );
+            ensemble = new Ensemble( (Class<? extends Env2D<?>>)cls, readScene( options.get( "asset" ) ), Integer.parseInt( options.get( "members" ) ),
+                    Integer.parseInt( options.get( "ticks" ) ), Double.parseDouble( options.get( "step" ) ), Double.parseDouble( options.get( "perturb" ) ),
+                    Long.parseLong( options.get( "seed" ) ) );
+            threads = Integer.parseInt( options.get( "threads" ) );
+            if( ensemble.members < 1 || ensemble.ticks < 0 || threads < 1 )
+                throw new IllegalArgumentException( "Members and threads must be positive and ticks must not be negative" );
+        } catch( ReflectiveOperationException|IllegalArgumentException|IllegalStateException|IOException e ) {
+            Logger.logThrowable( e, "Invalid ensemble options" );
+            return false;
+        }
+        Logger.logMessage( "Running " + ensemble.members + " members of " + ensemble.engine.getSimpleName() + " for " + ensemble.ticks + " ticks on " + threads + " threads" );
+        long start = System.currentTimeMillis();
+        //members are independent, so each runs whole on one thread of a work stealing pool instead of splitting its ticks over the workers
+        ForkJoinPool pool = new ForkJoinPool( threads );
+        for( int m = 0; m < ensemble.members; m++ ) {
+            int member = m;
+            pool.execute( () -> WorkerPool.runSerial( () -> ensemble.runMember( member ) ) );
+        }
+        pool.shutdown();
+        try {
+            while( !pool.awaitTermination( 1, TimeUnit.MINUTES ) )
+                Logger.logMessage( ensemble.finished.get() + " of " + ensemble.members + " members finished" );
+        } catch( InterruptedException e ) {
+            Logger.logThrowable( e, "Ensemble interrupted" );
+            pool.shutdownNow();
+            return false;
+        }
+        try( var out = new PrintStream( new FileOutputStream( options.get( "out" ) ) ) ) {
+            out.println( HEADER );
+            for( String result : ensemble.results )
+                if( result != null )
+                    out.println( result );
+        } catch( IOException e ) {
+            Logger.logThrowable( e, "Could not write the ensemble summary" );
+            return false;
+        }
+        Logger.logMessage( "Ensemble finished in " + ( System.currentTimeMillis() - start ) + " ms, summary written to " + options.get( "out" ) );
+        return ensemble.finished.get() == ensemble.members;
+    }
+    
+    
+    //private utility methods
+    //simulates one member from its own perturbed copy of the scene and records its summary
+    private void runMember( int member ) {
+        long memberSeed = seed + member;
+        Env2D<?> env = null;
+        try {
+            env = SimObject.newInstance( engine );
+            env.timeStep = step;
+            populate( env, new Random( memberSeed ) );
+            int startCount = env.particles.size();
+            double startDistance = maxDistance( env.particles ), startKinetic = kinetic( env.particles );
+            long start = System.nanoTime();
+            for( int i = 0; i < ticks; i++ ) {
+                env.simulate();
+                env.afterTick();
+                env.timePassed += step;
+            }
+            long wall = ( System.nanoTime() - start ) / 1_000_000;
+            results[member] = String.format( Locale.ROOT, "%d,%d,%d,%d,%.9g,%.9g,%.9g,%.9g,%d", member, memberSeed, startCount, env.particles.size(),
+                    startDistance, maxDistance( env.particles ), startKinetic, kinetic( env.particles ), wall );
+            finished.incrementAndGet();
+        } catch( RuntimeException e ) {
+            Logger.logThrowable( e, "Ensemble member " + member + " failed" );
+        } finally {
+            //releases what the engine holds outside the jvm, such as the worker processes of distributed runs
+            if( env != null )
+                env.teardown();
+        }
+    }
+    
+    //fills an environment with a copy of the scene whose positions and velocities are each scaled by a random factor within perturb of 1
+    private <Type extends Object2D> void populate( Env2D<Type> env, Random random ) {
+        env.particles.clear();
+        for( SimObject obj : scene ) {
+            Type copy = env.acceptedType().cast( SimObject.valueOf( obj.formatString() ) );
+            copy.xPos *= 1 + perturb * ( 2 * random.nextDouble() - 1 );
+            copy.yPos *= 1 + perturb * ( 2 * random.nextDouble() - 1 );
+            copy.xVeloc *= 1 + perturb * ( 2 * random.nextDouble() - 1 );
+            copy.yVeloc *= 1 + perturb * ( 2 * random.nextDouble() - 1 );
+            env.particles.add( copy );
+        }
+    }
+    
+    //largest distance of a particle from the center of mass, which grows when bodies are thrown out of the scene
+    private static double maxDistance( List<? extends Object2D> particles ) {
+        if( particles.isEmpty() )
+            return 0;
+        double mass = 0, xCenter = 0, yCenter = 0, max = 0;
+        for( Object2D obj : particles ) {
+            mass += obj.mass;
+            xCenter += obj.mass * obj.xPos;
+            yCenter += obj.mass * obj.yPos;
+        }
+        xCenter /= mass;
+        yCenter /= mass;
+        for( Object2D obj : particles )
+            max = Math.max( max, Math.hypot( obj.xPos - xCenter, obj.yPos - yCenter ) );
+        return max;
+    }
+    
+    //total kinetic energy of the particles
+    private static double kinetic( List<? extends Object2D> particles ) {
+        double energy = 0;
+        for( Object2D obj : particles )
+            energy += obj.mass * ( obj.xVeloc * obj.xVeloc + obj.yVeloc * obj.yVeloc ) / 2;
+        return energy;
+    }
+    
+    //reads a scene from a bundled asset of that name, or from a file path
+    private static SimObject[] readScene( String asset ) throws IOException {
+        InputStream bundled = Ensemble.class.getClassLoader().getResourceAsStream( "assets/" + asset + ".spcobj" );
+        try( InputStream in = bundled != null ? bundled : new FileInputStream( asset ) ) {
+            return SimObject.read( in );
+        }
+    }
+}
@@ -13,17 +13,53 @@ import java.awt.event.KeyEvent;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseWheelEvent;
 import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.function.IntConsumer;
+import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
 import spcsim.base.EditPane;
+import spcsim.base.Logger;
 import spcsim.base.SimObject;
 
 public abstract class Env2D<Type extends Object2D> extends Environment<Type> {
     
     //serialversionuid
     public static final long serialVersionUID = SimObject.registerParticleClass( MethodHandles.lookup(), null );
+    //number of bodies along the edge of a pair tile
+    private static final int TILE_SIZE = 256;
+    //most bodies the precision error is measured on, and the bodies of each task measuring it
+    private static final int ERROR_SAMPLE = 1024, ERROR_BLOCK = 64;
+    //integrators for engines that calculate forces on the store
+    protected static final int EULER = 0, LEAPFROG = 1, YOSHIDA = 2;
+    //coefficients of the yoshida fourth order integrator
+    private static final double YOSHIDA_W1 = 1 / ( 2 - Math.cbrt( 2 ) ), YOSHIDA_W0 = 1 - 2 * YOSHIDA_W1;
     //environment variables for rendering settings
     protected double scale, posX, posY;
     protected transient MouseEvent lastPos, lastDrag;
+    //whether engines with a gravity kernel calculate forces in single precision
+    protected boolean singlePrecision;
+    //integrator used by engines that calculate forces on the store
+    protected int integrator;
+    //whether parallel engines keep to summation orders that do not depend on the worker count or the machine
+    protected boolean deterministic;
+    //ticks between sorts of the particles along a morton curve, 0 to never sort. off unless an engine that gains from locality sets it
+    protected int reorderInterval;
+    //structure of arrays copy of the particles for engines to simulate on
+    protected transient final ParticleStore store;
+    //tiles of the pairs of particles for engines to run in parallel
+    protected transient final TileScheduler scheduler;
+    //accelerations at the end of the last leapfrog step, reused when the particles were not changed since
+    private transient double[] xKick, yKick;
+    private transient boolean kickValid;
+    //kernel used in deterministic mode, since the lane sums of the vector kernel depend on the vector width of the machine
+    private transient final GravityKernel scalarKernel;
+    //sort of the particles along a morton curve, its positions and resulting order, and the ticks since the last sort
+    private transient final MortonOrder curve;
+    private transient double[] xSort, ySort;
+    private transient int[] order;
+    private transient int reorderTicks;
     
     protected Env2D( Class<Type> accept, String... assets ) {
         super( accept, assets );
@@ -32,6 +68,19 @@ public abstract class Env2D<Type extends Object2D> extends Environment<Type> {
         posY = 0;
         lastPos = new MouseEvent( this, 0, 0, 0, 0, 0, 0, false );
         lastDrag = null;
+        singlePrecision = false;
+        integrator = EULER;
+        deterministic = false;
+        scalarKernel = GravityKernel.scalar();
+        reorderInterval = 0;
+        curve = new MortonOrder();
+        xSort = ySort = new double[0];
+        order = new int[0];
+        reorderTicks = 0;
+        xKick = yKick = new double[0];
+        kickValid = false;
+        store = new ParticleStore();
+        scheduler = new TileScheduler( TILE_SIZE );
         super.enableEvents( MouseEvent.MOUSE_EVENT_MASK|MouseEvent.MOUSE_MOTION_EVENT_MASK|MouseWheelEvent.MOUSE_WHEEL_EVENT_MASK );
     }
     
@@ -115,35 +164,171 @@ public abstract class Env2D<Type extends Object2D> extends Environment<Type> {
             scale = 1;
             super.repaint();
         } );
+        editPane.addToggleMenuItem( EditPane.CONTROL_TYPE, "Deterministic", () -> deterministic, val -> deterministic = val );
+    }
+    
+    //sorts the particles along a morton curve every reorderInterval ticks so particles close in space are close in the list, the store
+    //and the caches. engines keep the state of a particle by index only while the store finds the particles unchanged, so they start over
+    //after a sort that moved any particle, while selections and locks refer to the particles themselves and stay valid
+    @Override
+    protected void afterTick() {
+        if( reorderInterval <= 0 || ++reorderTicks < reorderInterval )
+            return;
+        reorderTicks = 0;
+        int size = particles.size();
+        if( xSort.length < size ) {
+            int capacity = Math.max( size, xSort.length * 2 );
+            xSort = new double[capacity];
+            ySort = new double[capacity];
+            order = new int[capacity];
+        }
+        for( int i = 0; i < size; i++ ) {
+            Type obj = particles.get( i );
+            xSort[i] = obj.xPos;
+            ySort[i] = obj.yPos;
+        }
+        curve.sort( size, xSort, ySort, order );
+        ArrayList<Type> sorted = new ArrayList<>( size );
+        for( int i = 0; i < size; i++ )
+            sorted.add( particles.get( order[i] ) );
+        synchronized( particles ) {
+            for( int i = 0; i < size; i++ )
+                particles.set( i, sorted.get( i ) );
+        }
     }
     
     //utlities for implementations
+    //runs task for every index from 0 to count on the shared worker pool
+    protected final void parallelFor( int count, IntConsumer task ) {
+        WorkerPool.shared().run( count, task );
+    }
+    
+    //kernel for engines to sum gravity with, the scalar kernel instead of a preferred one in deterministic mode
+    protected final GravityKernel kernel( GravityKernel preferred ) {
+        return deterministic ? scalarKernel : preferred;
+    }
+    
+    //adds the reorder interval setting for engines that sort their particles along a morton curve
+    protected final void generateReorderGUI( EditPane editPane ) {
+        editPane.addValueMenuItem( EditPane.CONTROL_TYPE, "Reorder Interval", "Set Ticks Between Reorders, 0 for Never", () -> reorderInterval, val -> {
+                if( val < 0 )
+                    throw new IllegalArgumentException( "Reorder interval must not be negative" );
+                reorderInterval = (int)val;
+            } );
+    }
+    
+    //adds the single precision switch and its error estimate for engines that sum gravity with a kernel
+    protected final void generatePrecisionGUI( EditPane editPane, GravityKernel kernel, double pull ) {
+        editPane.addToggleMenuItem( EditPane.CONTROL_TYPE, "Single Precision", () -> singlePrecision, val -> singlePrecision = val );
+        editPane.addMenuItem( EditPane.CONTROL_TYPE, "Precision Error", a -> {
+            //the sums take a while on large systems, so they run on their own thread and the dialog is posted back to the event thread
+            ParticleStore sample = new ParticleStore();
+            sample.load( Arrays.asList( super.getParticleList() ) );
+            var thread = new Thread( () -> {
+                String report = precisionReport( sample, kernel, pull );
+                Logger.logMessage( report );
+                SwingUtilities.invokeLater( () -> JOptionPane.showMessageDialog( null, report, "Precision Error", JOptionPane.INFORMATION_MESSAGE ) );
+            }, "Simulator-Precision-Report" );
+            thread.setDaemon( true );
+            thread.start();
+        } );
+    }
+    
+    //adds the integrator selection for engines that move the particles with integrate
+    protected final void generateIntegratorGUI( EditPane editPane ) {
+        editPane.addMenuItem( EditPane.CONTROL_TYPE, "Euler Integrator", a -> integrator = EULER );
+        editPane.addMenuItem( EditPane.CONTROL_TYPE, "Leapfrog Integrator", a -> integrator = LEAPFROG );
+        editPane.addMenuItem( EditPane.CONTROL_TYPE, "Yoshida Integrator", a -> integrator = YOSHIDA );
+    }
+    
+    //advances the loaded store by one time step with the selected integrator
+    //forces adds the accelerations at the current positions of the store and may be run several times
+    protected final void integrate( Runnable forces ) {
+        boolean reuseKick = kickValid && store.unchanged() && xKick.length >= store.size();
+        kickValid = false;
+        switch( integrator ) {
+            case LEAPFROG :
+                //kick drift kick, the closing forces open the next step
+                if( reuseKick ) {
+                    System.arraycopy( xKick, 0, store.xAccel, 0, store.size() );
+                    System.arraycopy( yKick, 0, store.yAccel, 0, store.size() );
+                } else
+                    forces.run();
+                store.kick( timeStep / 2 );
+                store.drift( timeStep );
+                store.clearAccelerations();
+                forces.run();
+                store.kick( timeStep / 2 );
+                if( xKick.length < store.size() ) {
+                    xKick = new double[ store.xAccel.length ];
+                    yKick = new double[ store.yAccel.length ];
+                }
+                System.arraycopy( store.xAccel, 0, xKick, 0, store.size() );
+                System.arraycopy( store.yAccel, 0, yKick, 0, store.size() );
+                kickValid = true;
+                break;
+            case YOSHIDA :
+                //three drift kick stages of leapfrog with weights w1, w0, w1
+                store.drift( YOSHIDA_W1 / 2 * timeStep );
+                forces.run();
+                store.kick( YOSHIDA_W1 * timeStep );
+                store.drift( ( YOSHIDA_W0 + YOSHIDA_W1 ) / 2 * timeStep );
+                store.clearAccelerations();
+                forces.run();
+                store.kick( YOSHIDA_W0 * timeStep );
+                store.drift( ( YOSHIDA_W0 + YOSHIDA_W1 ) / 2 * timeStep );
+                store.clearAccelerations();
+                forces.run();
+                store.kick( YOSHIDA_W1 * timeStep );
+                store.drift( YOSHIDA_W1 / 2 * timeStep );
+                break;
+            default :
+                //same step as Object2D.update
+                forces.run();
+                store.kick( timeStep );
+                store.drift( timeStep );
+        }
+    }
+    
+    //moves the particles with steps short enough that no pair closes in by more than ratioThresh of its distance
+    //pairs run in exclusive tiles so interact can update both particles, contacts are removed after each step
     protected final void simulateStable( double ratioThresh, boolean removeContacts ) {
         int size = particles.size();
+        int slots = WorkerPool.shared().parallelism();
+        double[] slotStepSq = new double[slots];
         double localTime = timeStep;
         while( localTime > 0 ) {
-            double maxStepSq = localTime * localTime;
-            for( int i = 0; i < size; i++ ) {
-                Object2D p1 = particles.get( i );
-                for( int j = i + 1; j < size; j++ ) {
-                    Object2D p2 = particles.get( j );
-                    double distSq = p1.interact( p2 );
-                    if( removeContacts && distSq < 0 ) {
-                        synchronized( particles ) {
-                            particles.remove( j-- );
-                        }
-                        size--;
-                    } else {
-                        double xvDiff = p2.xVeloc - p1.xVeloc;
-                        double yvDiff = p2.yVeloc - p1.yVeloc;
-                        double stepSq = ratioThresh * distSq / ( xvDiff * xvDiff + yvDiff * yvDiff );
-                        if( maxStepSq > stepSq ) {
-                            maxStepSq = stepSq;
+            Arrays.fill( slotStepSq, localTime * localTime );
+            scheduler.forEachExclusiveTile( size, slots, ( slot, rowFrom, rowTo, columnFrom, columnTo ) -> {
+                double maxStepSq = slotStepSq[slot];
+                for( int i = rowFrom; i < rowTo; i++ ) {
+                    if( isRemoved( i ) )
+                        continue;
+                    Object2D p1 = particles.get( i );
+                    for( int j = rowFrom == columnFrom ? i + 1 : columnFrom; j < columnTo; j++ ) {
+                        if( isRemoved( j ) )
+                            continue;
+                        Object2D p2 = particles.get( j );
+                        double distSq = p1.interact( p2 );
+                        if( removeContacts && distSq < 0 )
+                            markRemoved( j );
+                        else {
+                            double xvDiff = p2.xVeloc - p1.xVeloc;
+                            double yvDiff = p2.yVeloc - p1.yVeloc;
+                            double stepSq = ratioThresh * distSq / ( xvDiff * xvDiff + yvDiff * yvDiff );
+                            if( maxStepSq > stepSq ) {
+                                maxStepSq = stepSq;
+                            }
                         }
                     }
                 }
-            }
+                slotStepSq[slot] = maxStepSq;
+            } );
+            double maxStepSq = slotStepSq[0];
+            for( int s = 1; s < slots; s++ )
+                maxStepSq = Math.min( maxStepSq, slotStepSq[s] );
             double maxStep = Math.sqrt( maxStepSq );
+            size -= super.compactRemoved();
             for( int i = 0; i < size; i++ ) {
                 Object2D p = particles.get( i );
                 p.update( maxStep );
@@ -151,4 +336,27 @@ public abstract class Env2D<Type extends Object2D> extends Environment<Type> {
             localTime -= maxStep;
         }
     }
+    
+    
+    //private utility methods
+    //compares single and double precision gravity on a copy of the particles, with the rows split over the workers
+    private String precisionReport( ParticleStore sample, GravityKernel kernel, double pull ) {
+        int rows = Math.min( sample.size(), ERROR_SAMPLE ), blocks = ( rows + ERROR_BLOCK - 1 ) / ERROR_BLOCK;
+        parallelFor( blocks, block -> kernel.accelerate( sample, block * ERROR_BLOCK, Math.min( block * ERROR_BLOCK + ERROR_BLOCK, rows ), pull, ( index1, index2 ) -> { } ) );
+        double[] xAccel = Arrays.copyOf( sample.xAccel, rows ), yAccel = Arrays.copyOf( sample.yAccel, rows );
+        Arrays.fill( sample.xAccel, 0 );
+        Arrays.fill( sample.yAccel, 0 );
+        sample.toSingle();
+        parallelFor( blocks, block -> kernel.accelerateSingle( sample, block * ERROR_BLOCK, Math.min( block * ERROR_BLOCK + ERROR_BLOCK, rows ), pull, ( index1, index2 ) -> { } ) );
+        double errorSq = 0, normSq = 0, maxError = 0;
+        for( int i = 0; i < rows; i++ ) {
+            double error = Math.hypot( sample.xAccel[i] - xAccel[i], sample.yAccel[i] - yAccel[i] ), norm = Math.hypot( xAccel[i], yAccel[i] );
+            errorSq += error * error;
+            normSq += norm * norm;
+            if( norm > 0 )
+                maxError = Math.max( maxError, error / norm );
+        }
+        return String.format( "Single precision gravity error on %d of %d bodies\nRMS relative error: %.3g\nLargest relative error: %.3g",
+                rows, sample.size(), normSq > 0 ? Math.sqrt( errorSq / normSq ) : 0, maxError );
+    }
 }
@@ -42,6 +42,9 @@ public abstract class Environment<Type extends SimObject> extends Component impl
     private final Class<Type> acceptedType;//accepted type of particle
     private final String[] assetNames;
     private transient Thread mainThread;//thread simulator runs on
+    private transient final Object removeLock;//lock for marking particles, separate since start and stop hold the environment
+    private transient boolean[] removed;//particles marked to be removed by the next compaction
+    private transient int removedCount;
     //environment variables
     protected double timeStep;//indicates the time passed per tick of simulation
     protected double timePassed;//indicates days passed in simulation
@@ -57,6 +60,9 @@ public abstract class Environment<Type extends SimObject> extends Component impl
         acceptedType = accept;
         assetNames = assets;
         mainThread = null;
+        removeLock = new Object();
+        removed = new boolean[0];
+        removedCount = 0;
         timeStep = 1;
         timePassed = 0;
         tickLength = 8;
@@ -221,6 +227,49 @@ public abstract class Environment<Type extends SimObject> extends Component impl
     //sets the position of objects to the camera
     protected void setPosToCamera( List<Type> objects ) { }
     
+    //marks the particle at an index to be removed by the next compactRemoved, so loops can keep their indices. safe to call from worker threads
+    protected final void markRemoved( int index ) {
+        synchronized( removeLock ) {
+            if( removed.length <= index )
+                removed = Arrays.copyOf( removed, Math.max( particles.size(), index + 1 ) );
+            if( !removed[index] ) {
+                removed[index] = true;
+                removedCount++;
+            }
+        }
+    }
+    
+    //whether the particle at an index is marked to be removed
+    protected final boolean isRemoved( int index ) {
+        boolean[] marks = removed;
+        return index < marks.length && marks[index];
+    }
+    
+    //removes every marked particle in one pass keeping the order of the rest, and returns the number removed
+    protected final int compactRemoved() {
+        synchronized( removeLock ) {
+            if( removedCount == 0 )
+                return 0;
+            int size = particles.size(), kept = 0;
+            synchronized( particles ) {
+                for( int i = 0; i < size; i++ )
+                    if( !isRemoved( i ) )
+                        particles.set( kept++, particles.get( i ) );
+                particles.subList( kept, size ).clear();
+            }
+            Arrays.fill( removed, false );
+            removedCount = 0;
+            return size - kept;
+        }
+    }
+    
+    //called on the simulation thread after every tick, for implementations to maintain the particle list between ticks
+    protected void afterTick() { }
+    
+    //called once the environment is stopped and switched out of the frame or an ensemble member is done with it, for implementations to
+    //release what they hold outside the jvm. the environment may be switched back in later, so implementations must be able to pick up again
+    protected void teardown() { }
+    
     //abstract methods to implement
     //simulate
     protected abstract void simulate();
@@ -250,6 +299,7 @@ public abstract class Environment<Type extends SimObject> extends Component impl
             //simulates a single tick of the simulation
             if( currentTime > simTime + tickLength ) {
                 simulate();
+                afterTick();
                 timePassed += timeStep;
                 simTime = currentTime;
             }
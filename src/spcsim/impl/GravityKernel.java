@@ -0,0 +1,100 @@
+package spcsim.impl;
+
+/* Author: Kent Fukuda
+ * Description: Direct summation kernel for the gravity of the bodies in a particle store, with a scalar loop
+ * Created: 10-16-26
+ * Status: utility class, finished
+ * Dependencies: ParticleStore, Logger
+ * Licensed under GNU v3, see src/spcsim/SpaceSim.java for more details
+ */
+
+import spcsim.base.Logger;
+
+public class GravityKernel {
+    
+    //receives the pairs of bodies that touch
+    @FunctionalInterface
+    public interface ContactListener {
+        void touch( int index1, int index2 );
+    }
+    
+    //constructor
+    GravityKernel() { }
+    
+    
+    //creates the vector kernel when the incubator module is present and the kernel was built, otherwise the scalar kernel
+    public static GravityKernel create() {
+        if( ModuleLayer.boot().findModule( "jdk.incubator.vector" ).isPresent() ) {
+            try {
+                GravityKernel kernel = (GravityKernel)Class.forName( "spcsim.impl.VectorGravityKernel" ).getDeclaredConstructor().newInstance();
+                Logger.logMessage( "Using vector gravity kernel" );
+                return kernel;
+            } catch( ClassNotFoundException e ) {
+                Logger.logMessage( "Vector kernel not built, using scalar kernel" );
+            } catch( ReflectiveOperationException | LinkageError e ) {
+                Logger.logThrowable( e, "Vector kernel unavailable, using scalar kernel" );
+            }
+        }
+        return new GravityKernel();
+    }
+    
+    //creates the scalar kernel regardless of the modules present
+    public static GravityKernel scalar() {
+        return new GravityKernel();
+    }
+    
+    
+    //adds pull * mass / dist^3 * diff from every body to the bodies from index from to index to
+    //touching pairs are skipped and reported once with the lower index first
+    public void accelerate( ParticleStore store, int from, int to, double pull, ContactListener contacts ) {
+        int size = store.size();
+        double[] xPos = store.xPos, yPos = store.yPos, mass = store.mass, radius = store.radius;
+        for( int i = from; i < to; i++ ) {
+            double px = xPos[i], py = yPos[i], pr = radius[i];
+            double ax = 0, ay = 0;
+            for( int j = 0; j < size; j++ ) {
+                double xDiff = px - xPos[j];
+                double yDiff = py - yPos[j];
+                double distSq = xDiff * xDiff + yDiff * yDiff;
+                double dist = Math.sqrt( distSq );
+                if( dist <= pr + radius[j] ) {
+                    if( i < j )
+                        contacts.touch( i, j );
+                } else {
+                    double force = mass[j] / ( distSq * dist );
+                    ax += force * xDiff;
+                    ay += force * yDiff;
+                }
+            }
+            store.xAccel[i] += pull * ax;
+            store.yAccel[i] += pull * ay;
+        }
+    }
+    
+    //same as accelerate with the single precision columns of the store, which toSingle must have filled
+    //each pair is calculated in float and the sums are kept in double
+    public void accelerateSingle( ParticleStore store, int from, int to, double pull, ContactListener contacts ) {
+        int size = store.size();
+        float[] xPos = store.xSingle, yPos = store.ySingle, mass = store.massSingle, radius = store.radiusSingle;
+        for( int i = from; i < to; i++ ) {
+            float px = xPos[i], py = yPos[i], pr = radius[i];
+            double ax = 0, ay = 0;
+            for( int j = 0; j < size; j++ ) {
+                float xDiff = px - xPos[j];
+                float yDiff = py - yPos[j];
+                float distSq = xDiff * xDiff + yDiff * yDiff;
+                float dist = (float)Math.sqrt( distSq );
+                if( dist <= pr + radius[j] ) {
+                    if( i < j )
+                        contacts.touch( i, j );
+                } else {
+                    float force = mass[j] / ( distSq * dist );
+                    ax += force * xDiff;
+                    ay += force * yDiff;
+                }
+            }
+            store.xAccel[i] += pull * ax;
+            store.yAccel[i] += pull * ay;
+        }
+    }
+}
@@ -147,6 +147,7 @@ public final class MainFrame extends JFrame implements SimObject {
         if( environment != null ) {
             envCache.get( (Class<Environment<?>>)environment.getClass() ).envInfo = environment.formatString();
             environment.stop();
+            environment.teardown();
             container.removeAll();
             if( environment.acceptedType().equals( env.acceptedType() ) ) {
                 var add = Arrays.asList( environment.getParticleList() );
@@ -0,0 +1,106 @@
+package spcsim.impl;
+
+/* Author: Kent Fukuda
+ * Description: Parallel radix sort of 2D positions along a morton curve, so that bodies close in space end up close in memory
+ * Created: 10-16-26
+ * Status: utility class, finished
+ * Dependencies: WorkerPool
+ * Licensed under GNU v3, see src/spcsim/SpaceSim.java for more details
+ */
+
+import java.util.Arrays;
+
+public final class MortonOrder {
+    
+    //bits of each coordinate in a key, and bits of the key sorted by each radix pass
+    private static final int COORD_BITS = 16, DIGIT_BITS = 8, DIGITS = 1 << DIGIT_BITS;
+    //number of entries handled by each task
+    private static final int BLOCK = 4096;
+    
+    //keys in the high bits and indices in the low bits, and the buffer each pass scatters into
+    private long[] entries, buffer;
+    //digit counts of every block, turned into the place each block writes its first entry of a digit
+    private int[] counts;
+    
+    //constructor
+    public MortonOrder() {
+        entries = buffer = new long[0];
+        counts = new int[0];
+    }
+    
+    
+    //fills order with the indices of the first count positions sorted along a morton curve over their bounding square
+    //the sort is stable, so bodies with the same key keep their order and the result does not depend on the number of threads
+    public void sort( int count, double[] xPos, double[] yPos, int[] order ) {
+        if( entries.length < count ) {
+            int capacity = Math.max( count, entries.length * 2 );
+            entries = new long[capacity];
+            buffer = new long[capacity];
+        }
+        int blocks = ( count + BLOCK - 1 ) / BLOCK;
+        if( counts.length < blocks * DIGITS )
+            counts = new int[ blocks * DIGITS ];
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY, extent = 0;
+        for( int i = 0; i < count; i++ ) {
+            minX = Math.min( minX, xPos[i] );
+            minY = Math.min( minY, yPos[i] );
+        }
+        for( int i = 0; i < count; i++ )
+            extent = Math.max( extent, Math.max( xPos[i] - minX, yPos[i] - minY ) );
+        //cells of the square the positions are quantized to, positions that are not finite all land in cell 0
+        double cells = extent > 0 ? ( ( 1 << COORD_BITS ) - 1 ) / extent : 0;
+        double originX = minX, originY = minY;
+        WorkerPool pool = WorkerPool.shared();
+        long[] keyed = entries;
+        pool.run( blocks, block -> {
+            for( int i = block * BLOCK; i < Math.min( block * BLOCK + BLOCK, count ); i++ ) {
+                int x = (int)( ( xPos[i] - originX ) * cells ), y = (int)( ( yPos[i] - originY ) * cells );
+                keyed[i] = (long)( spread( x ) | spread( y ) << 1 ) << 32 | i;
+            }
+        } );
+        //least significant digit first, skipping digits every key shares
+        for( int shift = 32; shift < 64; shift += DIGIT_BITS ) {
+            long[] from = entries, to = buffer;
+            int digitShift = shift;
+            pool.run( blocks, block -> {
+                int base = block * DIGITS;
+                Arrays.fill( counts, base, base + DIGITS, 0 );
+                for( int i = block * BLOCK; i < Math.min( block * BLOCK + BLOCK, count ); i++ )
+                    counts[ base + ( (int)( from[i] >>> digitShift ) & ( DIGITS - 1 ) ) ]++;
+            } );
+            int place = 0;
+            boolean shared = false;
+            for( int digit = 0; digit < DIGITS; digit++ ) {
+                int start = place;
+                for( int block = 0; block < blocks; block++ ) {
+                    int digitCount = counts[ block * DIGITS + digit ];
+                    counts[ block * DIGITS + digit ] = place;
+                    place += digitCount;
+                }
+                shared |= place - start == count;
+            }
+            if( shared )
+                continue;
+            pool.run( blocks, block -> {
+                int base = block * DIGITS;
+                for( int i = block * BLOCK; i < Math.min( block * BLOCK + BLOCK, count ); i++ )
+                    to[ counts[ base + ( (int)( from[i] >>> digitShift ) & ( DIGITS - 1 ) ) ]++ ] = from[i];
+            } );
+            entries = to;
+            buffer = from;
+        }
+        for( int i = 0; i < count; i++ )
+            order[i] = (int)entries[i];
+    }
+    
+    
+    //private utility methods
+    //spreads the low 16 bits of a value out to the even bits of an int
+    private static int spread( int value ) {
+        value &= 0xFFFF;
+        value = ( value | value << 8 ) & 0x00FF00FF;
+        value = ( value | value << 4 ) & 0x0F0F0F0F;
+        value = ( value | value << 2 ) & 0x33333333;
+        return ( value | value << 1 ) & 0x55555555;
+    }
+}
@@ -95,6 +95,12 @@ public abstract class Object2D<Type extends Object2D> implements SimObject, Clon
         color = c.getRGB();
     }
     
+    //adds an acceleration calculated outside of interact to the particle
+    public final void accelerate( double xAccel, double yAccel ) {
+        this.xAccel += xAccel;
+        this.yAccel += yAccel;
+    }
+    
     //simulations the movement of the particle without resetting delta t variables
     public final void update( double timeStep ) {
         xPos += ( xVeloc += xAccel * timeStep ) * timeStep;
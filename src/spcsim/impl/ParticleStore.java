@@ -0,0 +1,162 @@
+package spcsim.impl;
+
+/* Author: Kent Fukuda
+ * Description: Structure of arrays copy of the particles of a 2D environment for the simulation hot loops
+ * Created: 10-16-26
+ * Status: utility class, finished
+ * Dependencies: Object2D
+ * Licensed under GNU v3, see src/spcsim/SpaceSim.java for more details
+ */
+
+import java.util.Arrays;
+import java.util.List;
+
+public final class ParticleStore {
+    
+    //columns of the particle attributes, valid up to size
+    public double[] mass, radius, xPos, yPos, xVeloc, yVeloc, xAccel, yAccel;
+    //single precision columns filled by toSingle, with positions relative to the origin
+    public float[] xSingle, ySingle, massSingle, radiusSingle;
+    public double xOrigin, yOrigin;
+    private int size;
+    //whether the particles were saved since the last load and whether the last load found them as they were saved
+    private boolean saved, unchanged;
+    
+    //constructor
+    public ParticleStore() {
+        mass = radius = xPos = yPos = xVeloc = yVeloc = xAccel = yAccel = new double[0];
+        xSingle = ySingle = massSingle = radiusSingle = new float[0];
+        xOrigin = 0;
+        yOrigin = 0;
+        size = 0;
+        saved = false;
+        unchanged = false;
+    }
+    
+    
+    //number of particles in the store
+    public int size() {
+        return size;
+    }
+    
+    //whether the last load found the particles exactly as the store saved them, so values derived from them are still valid
+    public boolean unchanged() {
+        return unchanged;
+    }
+    
+    //copies the particles into the columns and clears the accelerations
+    public void load( List<? extends Object2D> particles ) {
+        int count = particles.size();
+        unchanged = saved && count == size;
+        size = count;
+        ensureCapacity( size );
+        for( int i = 0; i < size; i++ ) {
+            Object2D obj = particles.get( i );
+            if( unchanged && ( obj.mass != mass[i] || obj.radius != radius[i] || obj.xPos != xPos[i] || obj.yPos != yPos[i] || 
+                    obj.xVeloc != xVeloc[i] || obj.yVeloc != yVeloc[i] ) )
+                unchanged = false;
+            load( i, obj );
+        }
+        saved = false;
+    }
+    
+    //copies one particle into a row and clears its acceleration
+    public void load( int index, Object2D obj ) {
+        mass[index] = obj.mass;
+        radius[index] = obj.radius;
+        xPos[index] = obj.xPos;
+        yPos[index] = obj.yPos;
+        xVeloc[index] = obj.xVeloc;
+        yVeloc[index] = obj.yVeloc;
+        xAccel[index] = 0;
+        yAccel[index] = 0;
+    }
+    
+    //writes the positions and velocities back to the particles the store was loaded from
+    public void save( List<? extends Object2D> particles ) {
+        for( int i = 0; i < size; i++ )
+            save( i, particles.get( i ) );
+        saved = true;
+    }
+    
+    //writes the position and velocity of a row back to a particle
+    public void save( int index, Object2D obj ) {
+        obj.xPos = xPos[index];
+        obj.yPos = yPos[index];
+        obj.xVeloc = xVeloc[index];
+        obj.yVeloc = yVeloc[index];
+    }
+    
+    //moves the acceleration a particle gathered in interact into a row
+    public void collect( int index, Object2D obj ) {
+        xAccel[index] += obj.xAccel;
+        yAccel[index] += obj.yAccel;
+        obj.xAccel = obj.yAccel = 0;
+    }
+    
+    //fills the single precision columns, placing the origin at the center of the particles so positions keep their precision
+    public void toSingle() {
+        if( xSingle.length < size ) {
+            int capacity = xPos.length;
+            xSingle = new float[capacity];
+            ySingle = new float[capacity];
+            massSingle = new float[capacity];
+            radiusSingle = new float[capacity];
+        }
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for( int i = 0; i < size; i++ ) {
+            minX = Math.min( minX, xPos[i] );
+            minY = Math.min( minY, yPos[i] );
+            maxX = Math.max( maxX, xPos[i] );
+            maxY = Math.max( maxY, yPos[i] );
+        }
+        xOrigin = size == 0 ? 0 : ( minX + maxX ) / 2;
+        yOrigin = size == 0 ? 0 : ( minY + maxY ) / 2;
+        for( int i = 0; i < size; i++ ) {
+            xSingle[i] = (float)( xPos[i] - xOrigin );
+            ySingle[i] = (float)( yPos[i] - yOrigin );
+            massSingle[i] = (float)mass[i];
+            radiusSingle[i] = (float)radius[i];
+        }
+    }
+    
+    //changes the velocities by the accelerations over a time
+    public void kick( double time ) {
+        for( int i = 0; i < size; i++ ) {
+            xVeloc[i] += xAccel[i] * time;
+            yVeloc[i] += yAccel[i] * time;
+        }
+    }
+    
+    //moves the positions with the velocities over a time
+    public void drift( double time ) {
+        for( int i = 0; i < size; i++ ) {
+            xPos[i] += xVeloc[i] * time;
+            yPos[i] += yVeloc[i] * time;
+        }
+    }
+    
+    //clears the accelerations before forces are calculated again
+    public void clearAccelerations() {
+        Arrays.fill( xAccel, 0, size, 0 );
+        Arrays.fill( yAccel, 0, size, 0 );
+    }
+    
+    
+    //private utility methods
+    //grows the columns to fit a number of particles
+    private void ensureCapacity( int capacity ) {
+        if( xPos.length < capacity ) {
+            capacity = Math.max( capacity, xPos.length * 2 );
+            mass = new double[capacity];
+            radius = new double[capacity];
+            xPos = new double[capacity];
+            yPos = new double[capacity];
+            xVeloc = new double[capacity];
+            yVeloc = new double[capacity];
+            xAccel = new double[capacity];
+            yAccel = new double[capacity];
+        }
+    }
+}
@@ -0,0 +1,364 @@
+package spcsim.impl;
+
+/* Author: Kent Fukuda
+ * Description: Array based quadtree storing the mass moments of 2D particles for approximating long range forces, kept across ticks by refitting
+ * Created: 10-16-26
+ * Status: utility class, finished
+ * Dependencies: none
+ * Licensed under GNU v3, see src/spcsim/SpaceSim.java for more details
+ */
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+public final class QuadTree {
+    
+    //maximum depth of the tree. bodies at the same location are kept in one leaf past this depth
+    private static final int MAX_DEPTH = 48;
+    //root square of the last build relative to the bounds of the bodies, and the larger one update builds so bodies can drift before it must rebuild
+    private static final double BUILD_SLACK = 1.0001, UPDATE_SLACK = 1.25;
+    //most of the bodies that may leave their leaf in one update, and most the nodes may grow past the last build, before an update rebuilds instead
+    private static final double MAX_MOVED = 0.25, MAX_GROWTH = 2;
+    
+    //maximum number of bodies in a leaf before it is split
+    private final int leafSize;
+    //node geometry and moments
+    private double[] centerX, centerY, halfSize, nodeMass, comX, comY, maxRadius;
+    //node links. children of a node are stored as four consecutive nodes, population counts the bodies of the whole subtree
+    private int[] firstChild, firstBody, population, depth, parent;
+    //linked list of bodies in each leaf, and the leaf of each body
+    private int[] nextBody, leafOf;
+    private int nodeCount;
+    //bodies of the last build or update, nodes of the last build, and the bodies an update moves
+    private int bodyCount, builtNodes;
+    private int[] moved;
+    //body arrays of the last build or update
+    private double[] xPos, yPos, mass, radius;
+    
+    //constructor
+    public QuadTree( int leafSize ) {
+        if( leafSize < 1 )
+            throw new IllegalArgumentException( "Leaf size must be at least 1" );
+        this.leafSize = leafSize;
+        allocateNodes( 64 );
+        nextBody = leafOf = moved = new int[0];
+        nodeCount = 0;
+        bodyCount = 0;
+        builtNodes = 0;
+    }
+    
+    
+    //rebuilds the tree from the first count bodies of the arrays
+    public void build( int count, double[] xPos, double[] yPos, double[] mass, double[] radius ) {
+        rebuild( count, xPos, yPos, mass, radius, BUILD_SLACK );
+    }
+    
+    //brings the tree of the last build or update to the first count bodies of the arrays, refitting the moments of the nodes and only
+    //moving the bodies that left their leaf. rebuilds instead when the count changed, a body left the root, too many bodies moved at once
+    //or the tree grew too far past its last build, and returns whether it rebuilt
+    public boolean update( int count, double[] xPos, double[] yPos, double[] mass, double[] radius ) {
+        if( nodeCount == 0 || count != bodyCount || nodeCount > MAX_GROWTH * builtNodes ) {
+            rebuild( count, xPos, yPos, mass, radius, UPDATE_SLACK );
+            return true;
+        }
+        this.xPos = xPos;
+        this.yPos = yPos;
+        this.mass = mass;
+        this.radius = radius;
+        //sums the bodies still in their leaf and collects the others in the same pass
+        clearMoments();
+        int movedCount = 0, limit = (int)( count * MAX_MOVED );
+        for( int i = 0; i < count; i++ ) {
+            int leaf = leafOf[i];
+            if( contains( leaf, xPos[i], yPos[i] ) )
+                addMoment( leaf, i );
+            else if( movedCount < limit && contains( 0, xPos[i], yPos[i] ) )
+                moved[movedCount++] = i;
+            else {
+                rebuild( count, xPos, yPos, mass, radius, UPDATE_SLACK );
+                return true;
+            }
+        }
+        int oldCount = nodeCount;
+        for( int k = 0; k < movedCount; k++ )
+            move( moved[k] );
+        //leaves split by the moves lose the sums of their bodies, which are summed again from the new leaves
+        for( int node = oldCount; node < nodeCount; node += 4 ) {
+            int split = parent[node];
+            nodeMass[split] = comX[split] = comY[split] = maxRadius[split] = 0;
+        }
+        for( int k = 0; k < movedCount; k++ )
+            if( leafOf[ moved[k] ] < oldCount )
+                addMoment( leafOf[ moved[k] ], moved[k] );
+        for( int node = oldCount; node < nodeCount; node++ )
+            for( int j = firstBody[node]; j >= 0; j = nextBody[j] )
+                addMoment( node, j );
+        sumMoments();
+        return false;
+    }
+    
+    //number of nodes in the tree
+    public int size() {
+        return nodeCount;
+    }
+    
+    //fills order with the indices of the bodies sorted leaf by leaf, so that nearby bodies are walked one after another
+    public void bodyOrder( int[] order ) {
+        int count = 0;
+        int[] stack = new int[ 3 * MAX_DEPTH + 4 ];
+        int top = 0;
+        stack[top++] = 0;
+        while( top > 0 ) {
+            int node = stack[--top];
+            int child = firstChild[node];
+            if( child < 0 ) {
+                for( int j = firstBody[node]; j >= 0; j = nextBody[j] )
+                    order[count++] = j;
+            } else {
+                for( int i = child + 3; i >= child; i-- )
+                    if( population[i] > 0 )
+                        stack[top++] = i;
+            }
+        }
+    }
+    
+    //calculates the acceleration of a body using the tree and the opening angle theta
+    //accel receives the x and y acceleration, contact receives bodies with a larger index touching the body
+    public void gravity( int body, double theta, double pull, double[] accel, IntConsumer contact ) {
+        double px = xPos[body], py = yPos[body], pr = radius[body];
+        double thetaSq = theta * theta;
+        double ax = 0, ay = 0;
+        int[] stack = new int[ 3 * MAX_DEPTH + 4 ];
+        int top = 0;
+        stack[top++] = 0;
+        while( top > 0 ) {
+            int node = stack[--top];
+            double xDiff = px - comX[node];
+            double yDiff = py - comY[node];
+            double distSq = xDiff * xDiff + yDiff * yDiff;
+            double size = halfSize[node] * 2;
+            //distance from the body to the node box, for ruling out contacts inside the node
+            double xBox = Math.max( Math.abs( px - centerX[node] ) - halfSize[node], 0 );
+            double yBox = Math.max( Math.abs( py - centerY[node] ) - halfSize[node], 0 );
+            double reach = pr + maxRadius[node];
+            if( size * size < thetaSq * distSq && xBox * xBox + yBox * yBox > reach * reach ) {
+                //node is far enough to be approximated by its center of mass
+                double dist = Math.sqrt( distSq );
+                double force = pull * nodeMass[node] / ( distSq * dist );
+                ax += force * xDiff;
+                ay += force * yDiff;
+            } else if( firstChild[node] < 0 ) {
+                //sums leaf bodies directly
+                for( int j = firstBody[node]; j >= 0; j = nextBody[j] ) {
+                    if( j == body )
+                        continue;
+                    xDiff = px - xPos[j];
+                    yDiff = py - yPos[j];
+                    distSq = xDiff * xDiff + yDiff * yDiff;
+                    double dist = Math.sqrt( distSq );
+                    if( dist <= pr + radius[j] ) {
+                        if( contact != null && j > body )
+                            contact.accept( j );
+                    } else {
+                        double force = pull * mass[j] / ( distSq * dist );
+                        ax += force * xDiff;
+                        ay += force * yDiff;
+                    }
+                }
+            } else {
+                int child = firstChild[node];
+                for( int i = child; i < child + 4; i++ )
+                    if( population[i] > 0 )
+                        stack[top++] = i;
+            }
+        }
+        accel[0] = ax;
+        accel[1] = ay;
+    }
+    
+    
+    //private utility methods
+    //builds the tree from scratch with a root square of slack times the bounds of the bodies
+    private void rebuild( int count, double[] xPos, double[] yPos, double[] mass, double[] radius, double slack ) {
+        this.xPos = xPos;
+        this.yPos = yPos;
+        this.mass = mass;
+        this.radius = radius;
+        if( nextBody.length < count ) {
+            int capacity = Math.max( count, nextBody.length * 2 );
+            nextBody = new int[capacity];
+            leafOf = new int[capacity];
+            moved = new int[capacity];
+        }
+        //finds bounding square of the bodies
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for( int i = 0; i < count; i++ ) {
+            minX = Math.min( minX, xPos[i] );
+            minY = Math.min( minY, yPos[i] );
+            maxX = Math.max( maxX, xPos[i] );
+            maxY = Math.max( maxY, yPos[i] );
+        }
+        double half = Math.max( Math.max( maxX - minX, maxY - minY ) / 2, Double.MIN_NORMAL ) * slack;
+        nodeCount = 0;
+        bodyCount = count;
+        newNode( count == 0 ? 0 : ( minX + maxX ) / 2, count == 0 ? 0 : ( minY + maxY ) / 2, half, 0, -1 );
+        for( int i = 0; i < count; i++ )
+            insert( i );
+        builtNodes = nodeCount;
+        computeMoments();
+    }
+    
+    //inserts a body into the tree, counting it in every node on its way and splitting the leaf it lands in when full
+    private void insert( int body ) {
+        int node = 0;
+        population[node]++;
+        while( firstChild[node] >= 0 ) {
+            node = firstChild[node] + quadrant( node, xPos[body], yPos[body] );
+            population[node]++;
+        }
+        nextBody[body] = firstBody[node];
+        firstBody[node] = body;
+        leafOf[body] = node;
+        split( node );
+    }
+    
+    //moves a body that left its leaf up to the lowest node still holding it and down into the leaf it lies in, counting it only in
+    //the nodes it left or entered
+    private void move( int body ) {
+        int node = leafOf[body];
+        if( firstBody[node] == body )
+            firstBody[node] = nextBody[body];
+        else {
+            int prev = firstBody[node];
+            while( nextBody[prev] != body )
+                prev = nextBody[prev];
+            nextBody[prev] = nextBody[body];
+        }
+        while( !contains( node, xPos[body], yPos[body] ) ) {
+            population[node]--;
+            node = parent[node];
+        }
+        while( firstChild[node] >= 0 ) {
+            node = firstChild[node] + quadrant( node, xPos[body], yPos[body] );
+            population[node]++;
+        }
+        nextBody[body] = firstBody[node];
+        firstBody[node] = body;
+        leafOf[body] = node;
+        split( node );
+    }
+    
+    //whether a point lies in the square of a node, with the same edges quadrant uses. points that are not finite lie in no node
+    private boolean contains( int node, double x, double y ) {
+        double half = halfSize[node];
+        return x >= centerX[node] - half && x < centerX[node] + half && y >= centerY[node] - half && y < centerY[node] + half;
+    }
+    
+    //splits a leaf recursively until all of its children fit the leaf size
+    private void split( int node ) {
+        if( population[node] <= leafSize || depth[node] >= MAX_DEPTH )
+            return;
+        double half = halfSize[node] / 2;
+        int child = nodeCount;
+        for( int q = 0; q < 4; q++ )
+            newNode( centerX[node] + ( ( q & 1 ) == 0 ? -half : half ), centerY[node] + ( ( q & 2 ) == 0 ? -half : half ), half, depth[node] + 1, node );
+        firstChild[node] = child;
+        int body = firstBody[node];
+        firstBody[node] = -1;
+        while( body >= 0 ) {
+            int next = nextBody[body];
+            int target = child + quadrant( node, xPos[body], yPos[body] );
+            nextBody[body] = firstBody[target];
+            firstBody[target] = body;
+            leafOf[body] = target;
+            population[target]++;
+            body = next;
+        }
+        for( int q = 0; q < 4; q++ )
+            split( child + q );
+    }
+    
+    //returns the quadrant index of a point relative to a node center
+    private int quadrant( int node, double x, double y ) {
+        return ( x >= centerX[node] ? 1 : 0 ) | ( y >= centerY[node] ? 2 : 0 );
+    }
+    
+    //computes node masses, centers of mass and radii. bodies are summed into their leaves in index order, walking the body arrays
+    //front to back instead of leaf by leaf
+    private void computeMoments() {
+        clearMoments();
+        for( int j = 0; j < bodyCount; j++ )
+            addMoment( leafOf[j], j );
+        sumMoments();
+    }
+    
+    //clears the sums of every node
+    private void clearMoments() {
+        Arrays.fill( nodeMass, 0, nodeCount, 0 );
+        Arrays.fill( comX, 0, nodeCount, 0 );
+        Arrays.fill( comY, 0, nodeCount, 0 );
+        Arrays.fill( maxRadius, 0, nodeCount, 0 );
+    }
+    
+    //adds a body to the sums of its leaf, comX and comY hold mass weighted positions until sumMoments
+    private void addMoment( int leaf, int body ) {
+        nodeMass[leaf] += mass[body];
+        comX[leaf] += mass[body] * xPos[body];
+        comY[leaf] += mass[body] * yPos[body];
+        maxRadius[leaf] = Math.max( maxRadius[leaf], radius[body] );
+    }
+    
+    //sums children into their parents bottom up and turns the sums into centers of mass. children always come after their parent
+    private void sumMoments() {
+        for( int node = nodeCount - 1; node >= 0; node-- ) {
+            double m = nodeMass[node], mx = comX[node], my = comY[node], r = maxRadius[node];
+            int child = firstChild[node];
+            if( child >= 0 ) {
+                for( int i = child; i < child + 4; i++ ) {
+                    m += nodeMass[i];
+                    mx += nodeMass[i] * comX[i];
+                    my += nodeMass[i] * comY[i];
+                    r = Math.max( r, maxRadius[i] );
+                }
+            }
+            nodeMass[node] = m;
+            comX[node] = m == 0 ? centerX[node] : mx / m;
+            comY[node] = m == 0 ? centerY[node] : my / m;
+            maxRadius[node] = r;
+        }
+    }
+    
+    //creates a new empty leaf node
+    private int newNode( double x, double y, double half, int level, int above ) {
+        if( nodeCount == firstChild.length )
+            allocateNodes( nodeCount * 2 );
+        int node = nodeCount++;
+        centerX[node] = x;
+        centerY[node] = y;
+        halfSize[node] = half;
+        depth[node] = level;
+        parent[node] = above;
+        firstChild[node] = -1;
+        firstBody[node] = -1;
+        population[node] = 0;
+        nodeMass[node] = comX[node] = comY[node] = maxRadius[node] = 0;
+        return node;
+    }
+    
+    //grows node arrays
+    private void allocateNodes( int capacity ) {
+        centerX = centerX == null ? new double[capacity] : Arrays.copyOf( centerX, capacity );
+        centerY = centerY == null ? new double[capacity] : Arrays.copyOf( centerY, capacity );
+        halfSize = halfSize == null ? new double[capacity] : Arrays.copyOf( halfSize, capacity );
+        nodeMass = nodeMass == null ? new double[capacity] : Arrays.copyOf( nodeMass, capacity );
+        comX = comX == null ? new double[capacity] : Arrays.copyOf( comX, capacity );
+        comY = comY == null ? new double[capacity] : Arrays.copyOf( comY, capacity );
+        maxRadius = maxRadius == null ? new double[capacity] : Arrays.copyOf( maxRadius, capacity );
+        firstChild = firstChild == null ? new int[capacity] : Arrays.copyOf( firstChild, capacity );
+        firstBody = firstBody == null ? new int[capacity] : Arrays.copyOf( firstBody, capacity );
+        population = population == null ? new int[capacity] : Arrays.copyOf( population, capacity );
+        depth = depth == null ? new int[capacity] : Arrays.copyOf( depth, capacity );
+        parent = parent == null ? new int[capacity] : Arrays.copyOf( parent, capacity );
+    }
+}
@@ -0,0 +1,110 @@
+package spcsim.impl;
+
+/* Author: Kent Fukuda
+ * Description: Splits the pairs of bodies into square tiles of the upper triangle and hands them to the worker pool
+ * Created: 10-16-26
+ * Status: utility class, finished
+ * Dependencies: WorkerPool
+ * Licensed under GNU v3, see src/spcsim/SpaceSim.java for more details
+ */
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public final class TileScheduler {
+    
+    //receives a tile, the rows and columns are body index ranges and slot is unique among the tasks running at once
+    //on a diagonal tile, where the ranges are equal, only pairs with the column after the row belong to the tile
+    @FunctionalInterface
+    public interface TileTask {
+        void run( int slot, int rowFrom, int rowTo, int columnFrom, int columnTo );
+    }
+    
+    private final int tileSize;
+    private final AtomicInteger nextTile;
+    //tile orders for the current number of blocks, as row block and column block
+    private int blocks;
+    private int[] tileRow, tileColumn;
+    private int[] roundRow, roundColumn, roundStart;
+    
+    //constructor, tileSize is the number of bodies along a tile edge
+    public TileScheduler( int tileSize ) {
+        if( tileSize <= 0 )
+            throw new IllegalArgumentException( "Tile size must be larger than 0" );
+        this.tileSize = tileSize;
+        nextTile = new AtomicInteger();
+        blocks = -1;
+        tileRow = tileColumn = roundRow = roundColumn = roundStart = new int[0];
+    }
+    
+    
+    //runs every tile for count bodies on up to slots threads, in row order and claimed as threads become free
+    //tiles that share bodies run at the same time, so tasks should only write to memory of their own slot
+    public void forEachTile( int count, int slots, TileTask task ) {
+        createTiles( count );
+        runTiles( tileRow, tileColumn, 0, tileRow.length, count, slots, task );
+    }
+    
+    //runs every tile for count bodies on up to slots threads in rounds where no two tiles of a round share a body
+    //tasks may write to the bodies of their tile directly
+    public void forEachExclusiveTile( int count, int slots, TileTask task ) {
+        createTiles( count );
+        for( int r = 0; r + 1 < roundStart.length; r++ )
+            runTiles( roundRow, roundColumn, roundStart[r], roundStart[r + 1], count, slots, task );
+    }
+    
+    
+    //private utility methods
+    //runs tiles from index from to index to of an order
+    private void runTiles( int[] rows, int[] columns, int from, int to, int count, int slots, TileTask task ) {
+        nextTile.set( from );
+        WorkerPool.shared().run( Math.max( Math.min( slots, to - from ), 1 ), slot -> {
+            for( int t = nextTile.getAndIncrement(); t < to; t = nextTile.getAndIncrement() ) {
+                int rowFrom = rows[t] * tileSize, columnFrom = columns[t] * tileSize;
+                task.run( slot, rowFrom, Math.min( rowFrom + tileSize, count ), columnFrom, Math.min( columnFrom + tileSize, count ) );
+            }
+        } );
+    }
+    
+    //creates both tile orders when the number of blocks changes
+    private void createTiles( int count ) {
+        int newBlocks = ( count + tileSize - 1 ) / tileSize;
+        if( newBlocks == blocks )
+            return;
+        blocks = newBlocks;
+        int tiles = blocks * ( blocks + 1 ) / 2;
+        tileRow = new int[tiles];
+        tileColumn = new int[tiles];
+        int t = 0;
+        for( int a = 0; a < blocks; a++ )
+            for( int b = a; b < blocks; b++ ) {
+                tileRow[t] = a;
+                tileColumn[t++] = b;
+            }
+        //round robin pairing of the blocks after a round of the diagonal tiles, with a dummy block when the count is odd
+        int even = blocks + ( blocks & 1 );
+        roundRow = new int[tiles];
+        roundColumn = new int[tiles];
+        roundStart = new int[ Math.max( even, 1 ) + 1 ];
+        t = 0;
+        for( int a = 0; a < blocks; a++ ) {
+            roundRow[t] = a;
+            roundColumn[t++] = a;
+        }
+        roundStart[1] = t;
+        for( int r = 0; r + 1 < even; r++ ) {
+            t = addPair( t, even - 1, r );
+            for( int k = 1; k < even / 2; k++ )
+                t = addPair( t, ( r + k ) % ( even - 1 ), ( r - k + even - 1 ) % ( even - 1 ) );
+            roundStart[r + 2] = t;
+        }
+    }
+    
+    //adds the tile of two different blocks to the round order unless one is the dummy block
+    private int addPair( int t, int a, int b ) {
+        if( a >= blocks || b >= blocks )
+            return t;
+        roundRow[t] = Math.min( a, b );
+        roundColumn[t] = Math.max( a, b );
+        return t + 1;
+    }
+}
@@ -0,0 +1,57 @@
+package spcsim.impl;
+
+/* Author: Kent Fukuda
+ * Description: Lock free union find that groups particle indices from many threads with the lowest index of each group as its root
+ * Created: 10-16-26
+ * Status: utility class, finished
+ * Dependencies: none
+ * Licensed under GNU v3, see src/spcsim/SpaceSim.java for more details
+ */
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+public final class UnionFind {
+    
+    //parent of every index, roots are their own parent. links only go from a higher to a lower index
+    private AtomicIntegerArray parent;
+    
+    //constructor
+    public UnionFind() {
+        parent = new AtomicIntegerArray( 0 );
+    }
+    
+    
+    //makes every index from 0 to size a group of its own
+    public void reset( int size ) {
+        if( parent.length() < size )
+            parent = new AtomicIntegerArray( Math.max( size, parent.length() * 2 ) );
+        for( int i = 0; i < size; i++ )
+            parent.set( i, i );
+    }
+    
+    //root of the group of an index, the lowest index in the group once every union has returned
+    public int find( int index ) {
+        while( true ) {
+            int up = parent.get( index );
+            if( up == index )
+                return index;
+            int next = parent.get( up );
+            //path halving, a failed update only means another thread shortened the path first
+            if( next != up )
+                parent.compareAndSet( index, up, next );
+            index = next;
+        }
+    }
+    
+    //joins the groups of two indices. safe to call from worker threads
+    public void union( int index1, int index2 ) {
+        while( true ) {
+            int root1 = find( index1 ), root2 = find( index2 );
+            if( root1 == root2 )
+                return;
+            //the higher root is linked below the lower one, retried if it stopped being a root meanwhile
+            if( root1 < root2 ? parent.compareAndSet( root2, root2, root1 ) : parent.compareAndSet( root1, root1, root2 ) )
+                return;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package spcsim.impl;
+
+/* Author: Kent Fukuda
+ * Description: Verlet neighbor list of 2D particles built on a cell grid and kept until a particle moves past half the skin
+ * Created: 10-16-26
+ * Status: utility class, finished
+ * Dependencies: ParticleStore
+ * Licensed under GNU v3, see src/spcsim/SpaceSim.java for more details
+ */
+
+import java.util.Arrays;
+
+public final class VerletList {
+    
+    //most cells along each side of the grid
+    private static final int MAX_CELLS = 4096;
+    
+    //neighbors of body i are neighbors[ start[i] ] to neighbors[ start[i + 1] ], listed in both directions
+    public int[] start, neighbors;
+    //positions at the last build, for the displacement check
+    private double[] xRef, yRef;
+    private int count;
+    private double builtRange, builtSkin;
+    private boolean valid;
+    //cell grid work arrays
+    private int[] cellOf, cellStart, sorted;
+    
+    //constructor
+    public VerletList() {
+        start = new int[1];
+        neighbors = cellOf = cellStart = sorted = new int[0];
+        xRef = yRef = new double[0];
+        count = 0;
+        builtRange = builtSkin = 0;
+        valid = false;
+    }
+    
+    
+    //forces the next update to rebuild, for when particles were changed from outside
+    public void invalidate() {
+        valid = false;
+    }
+    
+    //rebuilds the list if the bodies of the store changed in number or any moved more than half the skin since the last build
+    //returns whether it was rebuilt
+    public boolean update( ParticleStore store, double skin ) {
+        return update( store, 0, skin );
+    }
+    
+    //same as update, but lists pairs up to range past the sum of the radii. the range is built with a quarter to spare so
+    //a slowly growing range does not rebuild every tick, and the list is rebuilt when the range drops below half of it
+    public boolean update( ParticleStore store, double range, double skin ) {
+        int size = store.size();
+        boolean stale = !valid || size != count || skin != builtSkin || range > builtRange || range < builtRange / 2;
+        double limitSq = skin * skin / 4;
+        for( int i = 0; i < size && !stale; i++ ) {
+            double xDiff = store.xPos[i] - xRef[i], yDiff = store.yPos[i] - yRef[i];
+            stale = xDiff * xDiff + yDiff * yDiff > limitSq;
+        }
+        if( stale ) {
+            builtRange = range * 1.25;
+            builtSkin = skin;
+            build( store, builtRange + skin );
+        }
+        return stale;
+    }
+    
+    //number of entries in the list, counting each pair twice
+    public int entries() {
+        return start[count];
+    }
+    
+    
+    //private utility methods
+    //lists every pair closer than the sum of the radii and the reach, using cells at least that wide
+    private void build( ParticleStore store, double reach ) {
+        int size = store.size();
+        double[] xPos = store.xPos, yPos = store.yPos, radius = store.radius;
+        if( xRef.length < size ) {
+            int capacity = Math.max( size, xRef.length * 2 );
+            xRef = new double[capacity];
+            yRef = new double[capacity];
+            cellOf = new int[capacity];
+            sorted = new int[capacity];
+            start = new int[capacity + 1];
+        }
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY, maxRadius = 0;
+        for( int i = 0; i < size; i++ ) {
+            minX = Math.min( minX, xPos[i] );
+            minY = Math.min( minY, yPos[i] );
+            maxX = Math.max( maxX, xPos[i] );
+            maxY = Math.max( maxY, yPos[i] );
+            maxRadius = Math.max( maxRadius, radius[i] );
+            xRef[i] = xPos[i];
+            yRef[i] = yPos[i];
+        }
+        double cellWidth = Math.max( 2 * maxRadius + reach, Double.MIN_NORMAL );
+        int columns = size == 0 ? 1 : Math.max( (int)Math.min( ( maxX - minX ) / cellWidth, MAX_CELLS ), 1 );
+        int rows = size == 0 ? 1 : Math.max( (int)Math.min( ( maxY - minY ) / cellWidth, MAX_CELLS ), 1 );
+        double xWidth = Math.max( ( maxX - minX ) / columns, Double.MIN_NORMAL ) * 1.0001;
+        double yWidth = Math.max( ( maxY - minY ) / rows, Double.MIN_NORMAL ) * 1.0001;
+        int cells = columns * rows;
+        if( cellStart.length < cells + 1 )
+            cellStart = new int[ cells + 1 ];
+        Arrays.fill( cellStart, 0, cells + 1, 0 );
+        for( int i = 0; i < size; i++ ) {
+            cellOf[i] = Math.min( (int)( ( yPos[i] - minY ) / yWidth ), rows - 1 ) * columns + Math.min( (int)( ( xPos[i] - minX ) / xWidth ), columns - 1 );
+            cellStart[ cellOf[i] + 1 ]++;
+        }
+        for( int c = 0; c < cells; c++ )
+            cellStart[c + 1] += cellStart[c];
+        int[] fill = Arrays.copyOf( cellStart, cells );
+        for( int i = 0; i < size; i++ )
+            sorted[ fill[ cellOf[i] ]++ ] = i;
+        //counts the neighbors of every body first, then fills the list at the offsets
+        Arrays.fill( start, 0, size + 1, 0 );
+        visitPairs( store, reach, columns, rows, false );
+        for( int i = 0; i < size; i++ )
+            start[i + 1] += start[i];
+        if( neighbors.length < start[size] )
+            neighbors = new int[ Math.max( start[size], neighbors.length * 2 ) ];
+        visitPairs( store, reach, columns, rows, true );
+        //filling moved every offset up to the next one, so the offsets are shifted back
+        for( int i = size; i > 0; i-- )
+            start[i] = start[i - 1];
+        start[0] = 0;
+        count = size;
+        valid = true;
+    }
+    
+    //visits each cell with itself and the four cells after it so every pair is visited once, counting or adding the close pairs
+    private void visitPairs( ParticleStore store, double reach, int columns, int rows, boolean add ) {
+        for( int cy = 0; cy < rows; cy++ )
+            for( int cx = 0; cx < columns; cx++ ) {
+                int cell = cy * columns + cx;
+                for( int s = cellStart[cell]; s < cellStart[cell + 1]; s++ ) {
+                    int i = sorted[s];
+                    for( int t = s + 1; t < cellStart[cell + 1]; t++ )
+                        addPair( store, reach, i, sorted[t], add );
+                    for( int n = 0; n < 4; n++ ) {
+                        int nx = cx + ( n == 0 ? 1 : n - 2 ), ny = cy + ( n == 0 ? 0 : 1 );
+                        if( nx < 0 || nx >= columns || ny >= rows )
+                            continue;
+                        int neighbor = ny * columns + nx;
+                        for( int t = cellStart[neighbor]; t < cellStart[neighbor + 1]; t++ )
+                            addPair( store, reach, i, sorted[t], add );
+                    }
+                }
+            }
+    }
+    
+    //counts or adds a pair in both directions if it is within reach
+    private void addPair( ParticleStore store, double reach, int i, int j, boolean add ) {
+        double xDiff = store.xPos[i] - store.xPos[j], yDiff = store.yPos[i] - store.yPos[j];
+        double limit = store.radius[i] + store.radius[j] + reach;
+        if( xDiff * xDiff + yDiff * yDiff >= limit * limit )
+            return;
+        if( add ) {
+            neighbors[ start[i]++ ] = j;
+            neighbors[ start[j]++ ] = i;
+        } else {
+            start[i + 1]++;
+            start[j + 1]++;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package spcsim.impl;
+
+/* Author: Kent Fukuda
+ * Description: Shared pool of persistent worker threads that run the parallel parts of a tick and park between ticks
+ * Created: 10-16-26
+ * Status: utility class, finished
+ * Dependencies: none
+ * Licensed under GNU v3, see src/spcsim/SpaceSim.java for more details
+ */
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntConsumer;
+
+public final class WorkerPool {
+    
+    //times a thread checks for work or completion before parking
+    private static final int SPIN_LIMIT = 1 << 12;
+    private static WorkerPool shared = null;
+    //whether the runs of a thread stay on it, for threads that are already one of many independent jobs
+    private static final ThreadLocal<Boolean> serial = ThreadLocal.withInitial( () -> false );
+    
+    private final Thread[] workers;
+    private final Object runLock;
+    private final AtomicInteger nextTask, unfinished;
+    //job published to the workers by a generation change
+    private volatile IntConsumer task;
+    private volatile int taskCount;
+    private volatile long generation;
+    private volatile Thread caller;
+    private volatile Throwable failure;
+    
+    //constructor
+    private WorkerPool( int workerCount ) {
+        workers = new Thread[workerCount];
+        runLock = new Object();
+        nextTask = new AtomicInteger();
+        unfinished = new AtomicInteger();
+        task = null;
+        taskCount = 0;
+        generation = 0;
+        caller = null;
+        failure = null;
+        for( int i = 0; i < workerCount; i++ ) {
+            workers[i] = new Thread( this::runWorker, "Simulator-Worker-" + i );
+            workers[i].setDaemon( true );
+            workers[i].start();
+        }
+    }
+    
+    
+    //pool shared by every environment, with one worker less than the processor count since the caller also works
+    public static synchronized WorkerPool shared() {
+        if( shared == null )
+            shared = new WorkerPool( Math.max( Runtime.getRuntime().availableProcessors() - 1, 0 ) );
+        return shared;
+    }
+    
+    //runs body on the calling thread with every run it makes kept on that thread, so independent jobs on their own threads
+    //do not queue up on the shared workers
+    public static void runSerial( Runnable body ) {
+        boolean outer = serial.get();
+        serial.set( true );
+        try {
+            body.run();
+        } finally {
+            serial.set( outer );
+        }
+    }
+    
+    
+    //number of threads that run tasks, including the caller
+    public int parallelism() {
+        return workers.length + 1;
+    }
+    
+    //runs task for every index from 0 to count on the workers and the calling thread and returns once all are done
+    //calls from inside a task or from runSerial run on the calling thread
+    public void run( int count, IntConsumer task ) {
+        if( workers.length == 0 || count <= 1 || serial.get() || Thread.holdsLock( runLock ) || isWorker( Thread.currentThread() ) ) {
+            for( int i = 0; i < count; i++ )
+                task.accept( i );
+            return;
+        }
+        synchronized( runLock ) {
+            this.task = task;
+            taskCount = count;
+            nextTask.set( 0 );
+            unfinished.set( workers.length + 1 );
+            failure = null;
+            caller = Thread.currentThread();
+            generation++;
+            for( Thread worker : workers )
+                LockSupport.unpark( worker );
+            work();
+            for( int spins = 0; unfinished.get() > 0; spins++ )
+                if( spins < SPIN_LIMIT )
+                    Thread.onSpinWait();
+                else
+                    LockSupport.park( this );
+            this.task = null;
+            Throwable thrown = failure;
+            failure = null;
+            if( thrown instanceof RuntimeException )
+                throw (RuntimeException)thrown;
+            else if( thrown instanceof Error )
+                throw (Error)thrown;
+            else if( thrown != null )
+                throw new IllegalStateException( thrown );
+        }
+    }
+    
+    
+    //private utility methods
+    //claims and runs tasks of the current job until none are left
+    private void work() {
+        IntConsumer current = task;
+        int count = taskCount;
+        try {
+            for( int i = nextTask.getAndIncrement(); i < count; i = nextTask.getAndIncrement() )
+                current.accept( i );
+        } catch( Throwable e ) {
+            failure = e;
+            nextTask.set( count );
+        }
+        if( unfinished.decrementAndGet() == 0 )
+            LockSupport.unpark( caller );
+    }
+    
+    //runnable method each worker thread runs, waits for a new generation and joins its job
+    //starts from generation 0 since a job may already be published by the time the thread runs
+    private void runWorker() {
+        long seen = 0;
+        while( true ) {
+            for( int spins = 0; generation == seen; spins++ )
+                if( spins < SPIN_LIMIT )
+                    Thread.onSpinWait();
+                else
+                    LockSupport.park( this );
+            seen = generation;
+            work();
+        }
+    }
+    
+    //whether a thread belongs to this pool
+    private boolean isWorker( Thread thread ) {
+        for( Thread worker : workers )
+            if( worker == thread )
+                return true;
+        return false;
+    }
+}
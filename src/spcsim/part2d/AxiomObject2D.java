@@ -59,12 +59,8 @@ public class AxiomObject2D extends Object2D<AxiomObject2D> {
         double force;
         //test for contact between particles
         if( dist <= totRad ) {
-            double vxDiff = p.xVeloc - xVeloc + xDiff;
-            double vyDiff = p.yVeloc - yVeloc + yDiff;
-        	//linear restoring spring force, drag, decreasing gravity
-            force = ( ( totRad / dist - 1 ) / ( invSpring + p.invSpring ) + 
-                    drag * p.drag * ( Math.sqrt( vxDiff * vxDiff + vyDiff * vyDiff ) - dist ) ) 
-                    / ( mass * p.mass ) - 1 / ( totRad * totRad * totRad );
+            force = contactForce( xDiff, yDiff, dist, totRad, p.xVeloc - xVeloc, p.yVeloc - yVeloc, 
+                    invSpring + p.invSpring, drag * p.drag, mass * p.mass );
         } else {
             //normal gravity calculations
             force = -1 / ( distSq * dist );
@@ -77,4 +73,43 @@ public class AxiomObject2D extends Object2D<AxiomObject2D> {
         p.yAccel -= forceY * mass;
         return dist;
     }
-}
\ No newline at end of file
+    
+    //calculates interaction between two particles without the long range gravity a particle mesh with the split radius calculates
+    void interactShort( AxiomObject2D p, double split ) {
+        double xDiff = xPos - p.xPos;
+        double yDiff = yPos - p.yPos;
+        double distSq = xDiff * xDiff + yDiff * yDiff;
+        double dist = Math.sqrt( distSq );
+        double totRad = radius + p.radius;
+        double force;
+        //test for contact between particles
+        if( dist <= totRad ) {
+            force = contactForce( xDiff, yDiff, dist, totRad, p.xVeloc - xVeloc, p.yVeloc - yVeloc, 
+                    invSpring + p.invSpring, drag * p.drag, mass * p.mass );
+        } else {
+            force = -1 / ( distSq * dist );
+        }
+        //removes the part of gravity already applied by the mesh
+        force += MeshSolver.longRangeFraction( dist, split ) / ( distSq * dist );
+        double forceX = force * xDiff;
+        double forceY = force * yDiff;
+        xAccel += forceX * p.mass;
+        yAccel += forceY * p.mass;
+        p.xAccel -= forceX * mass;
+        p.yAccel -= forceY * mass;
+    }
+    
+    
+    //static utility methods
+    //force between two touching particles: linear restoring spring force, drag, decreasing gravity
+    //each acceleration is the returned factor times the position difference times the mass of the other particle
+    //differences are of the first particle minus the second in position and the second minus the first in velocity
+    //invSpring is the sum of both inverse springs, drag and mass the products of both
+    static double contactForce( double xDiff, double yDiff, double dist, double totRad, double xVelocDiff, double yVelocDiff, 
+            double invSpring, double drag, double mass ) {
+        double vxDiff = xVelocDiff + xDiff;
+        double vyDiff = yVelocDiff + yDiff;
+        return ( ( totRad / dist - 1 ) / invSpring + drag * ( Math.sqrt( vxDiff * vxDiff + vyDiff * vyDiff ) - dist ) ) / mass 
+                - 1 / ( totRad * totRad * totRad );
+    }
+}
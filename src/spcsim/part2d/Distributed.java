@@ -0,0 +1,515 @@
+package spcsim.part2d;
+
+/* Author: Kent Fukuda
+ * Description: Implementation of the Particles2D simulation environment that splits the plane into domains each calculated by its own worker process
+ * Created: 10-16-26
+ * Status: environment class, finished
+ * Dependencies: SimObject, Particles2D, AxiomObject2D, DomainWorker, Bisection, Logger
+ * Licensed under GNU v3, see src/spcsim/SpaceSim.java for more details
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import javax.swing.JOptionPane;
+import spcsim.SpaceSim;
+import spcsim.impl.Bisection;
+import spcsim.impl.MainFrame;
+import spcsim.base.EditPane;
+import spcsim.base.Logger;
+import spcsim.base.SimObject;
+
+public final class Distributed extends Particles2D {
+    //serialversionuid
+    public static final long serialVersionUID = SimObject.registerParticleClass( MethodHandles.lookup(), "PTZDDS" );
+    //cells along each side of the grid the particles far from a domain are summed on
+    private static final int CELLS = 64;
+    //milliseconds to wait for the workers to connect, and for a worker to answer before it is given up on
+    private static final int CONNECT_TIME = 60_000, ANSWER_TIME = 10_000;
+    //bytes of the socket stream buffers
+    private static final int BUFFER_SIZE = 1 << 16;
+    //weight of the last tick in the smoothed cost of each domain
+    private static final double COST_SMOOTHING = 0.5;
+    
+    private int domains, port;
+    private double theta;
+    //whether the workers are started as processes on this machine, or started by hand with --domain-worker host:port
+    private boolean spawnWorkers;
+    private transient final Bisection bisection;
+    //particles and cells of every domain, sent to its worker or calculated here when the workers failed
+    private transient DomainWorker[] parts;
+    //indices of the store bucketed by domain, the particles of a domain running from first[domain] to first[domain + 1]
+    private transient int[] sorted, first;
+    //particles of other domains each domain sees one by one
+    private transient int[][] ghostOf;
+    private transient int[] ghostCount;
+    //workers of the domains, null until they are first needed
+    private transient Workers workers;
+    //whether the workers failed, after which forces are calculated in this process until the workers are restarted
+    private transient boolean failed;
+    private transient volatile boolean restart;
+    //smoothed nanoseconds per particle of each domain, used to weigh the particles when the plane is cut again
+    private transient double[] cost;
+    private transient double[] weight;
+    private transient int[] domainOf;
+    //grid every particle is summed on, positions relative to the corner of each cell, and the cell of every particle
+    private transient double[] cellMass, cellX, cellY;
+    private transient int[] cellCount, cellOf;
+    private transient double gridX, gridY, cellSize;
+    //copy of the grid for each domain, its own particles and ghosts taken back off
+    private transient double[][] domainMass, domainX, domainY;
+    private transient int[][] domainCount;
+    //spring and drag of every particle, gathered each tick since they can be edited without moving the particle
+    private transient double[] invSpring, drag;
+    private transient long ticks;
+    
+    //private constructor
+    private Distributed() {
+        domains = 2;
+        port = 0;
+        theta = 0.5;
+        spawnWorkers = true;
+        bisection = new Bisection();
+        parts = new DomainWorker[0];
+        sorted = cellOf = new int[0];
+        first = ghostCount = new int[0];
+        ghostOf = domainCount = new int[0][];
+        domainMass = domainX = domainY = new double[0][];
+        workers = null;
+        failed = false;
+        restart = false;
+        cost = new double[0];
+        weight = invSpring = drag = new double[0];
+        cellMass = new double[ CELLS * CELLS ];
+        cellX = new double[ CELLS * CELLS ];
+        cellY = new double[ CELLS * CELLS ];
+        cellCount = new int[ CELLS * CELLS ];
+        gridX = gridY = cellSize = 0;
+        domainOf = new int[0];
+        ticks = 0;
+    }
+    
+    //overridden gui method to add domain and worker settings
+    @Override
+    protected void generateGUI( EditPane editPane, MainFrame application ) {
+        super.generateGUI( editPane, application );
+        super.generateIntegratorGUI( editPane );
+        editPane.addValueMenuItem( EditPane.CONTROL_TYPE, "Domains", "Set Domains", () -> domains, val -> {
+                if( val < 1 || val > 256 )
+                    throw new IllegalArgumentException( "Domains must be between 1 and 256" );
+                domains = (int)val;
+                restart = true;
+            } );
+        editPane.addValueMenuItem( EditPane.CONTROL_TYPE, "Opening Angle", "Set Opening Angle", () -> theta, val -> {
+                if( val < 0 )
+                    throw new IllegalArgumentException( "Opening angle must not be negative" );
+                theta = val;
+            } );
+        editPane.addValueMenuItem( EditPane.CONTROL_TYPE, "Worker Port", "Set Worker Port", () -> port, val -> {
+                if( val < 0 || val > 65535 )
+                    throw new IllegalArgumentException( "Port must be between 0 and 65535" );
+                port = (int)val;
+                restart = true;
+            } );
+        editPane.addToggleMenuItem( EditPane.CONTROL_TYPE, "Spawn Local Workers", () -> spawnWorkers, val -> {
+                spawnWorkers = val;
+                restart = true;
+            } );
+        editPane.addMenuItem( EditPane.CONTROL_TYPE, "Restart Workers", a -> restart = true );
+        editPane.addMenuItem( EditPane.CONTROL_TYPE, "Domain Report", a -> {
+            String report = domainReport();
+            Logger.logMessage( report );
+            JOptionPane.showMessageDialog( null, report, "Domain Report", JOptionPane.INFORMATION_MESSAGE );
+        } );
+    }
+    
+    //implemented simulation method
+    @Override
+    protected void simulate() {
+        if( restart ) {
+            restart = false;
+            closeWorkers();
+            failed = false;
+        }
+        store.load( particles );
+        int size = store.size();
+        if( invSpring.length < size ) {
+            invSpring = new double[ store.xPos.length ];
+            drag = new double[ store.xPos.length ];
+            weight = new double[ store.xPos.length ];
+            domainOf = new int[ store.xPos.length ];
+            sorted = new int[ store.xPos.length ];
+            cellOf = new int[ store.xPos.length ];
+        }
+        for( int i = 0; i < size; i++ ) {
+            AxiomObject2D obj = particles.get( i );
+            invSpring[i] = obj.invSpring;
+            drag[i] = obj.drag;
+        }
+        //the setting is read once, since the menu may change it in the middle of a tick
+        int domains = this.domains;
+        rebalance( domains );
+        super.integrate( () -> calculateForces( domains ) );
+        store.save( particles );
+        ticks++;
+    }
+    
+    //ends the workers when the environment is switched out, they are started again the next time it simulates
+    @Override
+    protected void teardown() {
+        closeWorkers();
+        failed = false;
+    }
+    
+    
+    //private utility methods
+    //cuts the plane again so that every domain takes about the same time, weighing each particle by the cost of the domain it was in
+    //deterministic mode cuts by particle count instead, since the timings and the cuts made from them change from run to run
+    private void rebalance( int domains ) {
+        int size = store.size();
+        boolean measured = cost.length == bisection.domains() && cost.length == domains;
+        for( int i = 0; i < size; i++ )
+            weight[i] = measured ? cost[ bisection.domainOf( store.xPos[i], store.yPos[i] ) ] : 1;
+        bisection.split( size, store.xPos, store.yPos, deterministic ? null : weight, domains );
+        if( !measured ) {
+            cost = new double[domains];
+            Arrays.fill( cost, 1 );
+        }
+    }
+    
+    //calculates gravity and contact forces on every particle of the store, each domain on its worker
+    private void calculateForces( int domains ) {
+        int size = store.size();
+        if( size == 0 )
+            return;
+        if( workers != null && workers.count != domains )
+            closeWorkers();
+        //the workers connect on a thread of their own, and the domains are calculated here until they all have
+        if( !failed && workers == null )
+            workers = Workers.connect( domains, port, spawnWorkers );
+        if( workers != null && workers.failed ) {
+            closeWorkers();
+            failed = true;
+        }
+        if( parts.length != domains ) {
+            parts = new DomainWorker[domains];
+            first = new int[ domains + 1 ];
+            ghostOf = new int[domains][16];
+            ghostCount = new int[domains];
+            domainMass = new double[domains][ CELLS * CELLS ];
+            domainX = new double[domains][ CELLS * CELLS ];
+            domainY = new double[domains][ CELLS * CELLS ];
+            domainCount = new int[domains][ CELLS * CELLS ];
+            for( int d = 0; d < domains; d++ )
+                parts[d] = new DomainWorker();
+        }
+        fillDomains( domains );
+        long[] busy = new long[domains];
+        boolean remote = workers != null && workers.connected;
+        if( remote ) {
+            try {
+                //every worker gets its request before any answer is read, so the domains are calculated at the same time
+                for( int d = 0; d < domains; d++ )
+                    parts[d].writeRequest( workers.outputs[d] );
+                for( int d = 0; d < domains; d++ )
+                    busy[d] = parts[d].readResult( workers.inputs[d] );
+            } catch( IOException e ) {
+                //a worker that stopped answering times out and ends up here like one that closed its connection
+                Logger.logThrowable( e, "Lost the domain workers, calculating the domains in this process" );
+                closeWorkers();
+                failed = true;
+                remote = false;
+            }
+        }
+        if( !remote )
+            for( int d = 0; d < domains; d++ ) {
+                long start = System.nanoTime();
+                parts[d].forces();
+                busy[d] = System.nanoTime() - start;
+            }
+        for( int d = 0; d < domains; d++ ) {
+            DomainWorker part = parts[d];
+            for( int k = 0; k < part.own; k++ ) {
+                store.xAccel[ sorted[ first[d] + k ] ] += part.xAccel[k];
+                store.yAccel[ sorted[ first[d] + k ] ] += part.yAccel[k];
+            }
+            if( part.own > 0 )
+                cost[d] = ( 1 - COST_SMOOTHING ) * cost[d] + COST_SMOOTHING * busy[d] / part.own;
+        }
+    }
+    
+    //gives every domain its particles, the particles of other domains close enough to feel one by one, and the rest summed on a grid
+    //the particles are bucketed and summed on the grid in one pass, and each domain takes the particles it sees back off its copy of the grid
+    private void fillDomains( int domains ) {
+        int size = store.size();
+        double[] xPos = store.xPos, yPos = store.yPos, mass = store.mass, radius = store.radius;
+        //the grid covers the bounding square of the particles
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY, extent = 0, maxRadius = 0;
+        for( int i = 0; i < size; i++ ) {
+            minX = Math.min( minX, xPos[i] );
+            minY = Math.min( minY, yPos[i] );
+            maxRadius = Math.max( maxRadius, radius[i] );
+        }
+        for( int i = 0; i < size; i++ )
+            extent = Math.max( extent, Math.max( xPos[i] - minX, yPos[i] - minY ) );
+        gridX = minX;
+        gridY = minY;
+        cellSize = Math.max( extent, Double.MIN_NORMAL ) / CELLS;
+        //a cell is seen from at least as far as the opening angle allows for its size, and touching particles are always ghosts
+        double halo = Math.max( theta == 0 ? Double.POSITIVE_INFINITY : cellSize / theta, 2 * maxRadius );
+        Arrays.fill( first, 0 );
+        Arrays.fill( cellMass, 0 );
+        Arrays.fill( cellX, 0 );
+        Arrays.fill( cellY, 0 );
+        Arrays.fill( cellCount, 0 );
+        for( int i = 0; i < size; i++ ) {
+            domainOf[i] = bisection.domainOf( xPos[i], yPos[i] );
+            first[ domainOf[i] + 1 ]++;
+            int xCell = Math.min( (int)( ( xPos[i] - minX ) / cellSize ), CELLS - 1 ), yCell = Math.min( (int)( ( yPos[i] - minY ) / cellSize ), CELLS - 1 );
+            int cell = cellOf[i] = yCell * CELLS + xCell;
+            cellMass[cell] += mass[i];
+            cellX[cell] += mass[i] * ( xPos[i] - minX - xCell * cellSize );
+            cellY[cell] += mass[i] * ( yPos[i] - minY - yCell * cellSize );
+            cellCount[cell]++;
+        }
+        //counting sort by domain, keeping the order of the store within each domain
+        for( int d = 0; d < domains; d++ )
+            first[ d + 1 ] += first[d];
+        int[] next = Arrays.copyOf( first, domains );
+        for( int i = 0; i < size; i++ )
+            sorted[ next[ domainOf[i] ]++ ] = i;
+        //no other domain is closer to a particle than the edge of its own, so only particles near that edge look for the domains around them
+        Arrays.fill( ghostCount, 0 );
+        int[] near = new int[domains];
+        for( int i = 0; i < size; i++ )
+            if( bisection.inset( domainOf[i], xPos[i], yPos[i] ) <= halo )
+                for( int k = bisection.domainsNear( xPos[i], yPos[i], halo, near ) - 1; k >= 0; k-- ) {
+                    int d = near[k];
+                    if( d == domainOf[i] )
+                        continue;
+                    if( ghostCount[d] == ghostOf[d].length )
+                        ghostOf[d] = Arrays.copyOf( ghostOf[d], ghostCount[d] * 2 );
+                    ghostOf[d][ ghostCount[d]++ ] = i;
+                }
+        super.parallelFor( domains, this::fillDomain );
+    }
+    
+    //copies the particles, ghosts and far cells of one domain into its part
+    private void fillDomain( int d ) {
+        DomainWorker part = parts[d];
+        double[] mass = domainMass[d], xSum = domainX[d], ySum = domainY[d];
+        int[] count = domainCount[d];
+        System.arraycopy( cellMass, 0, mass, 0, CELLS * CELLS );
+        System.arraycopy( cellX, 0, xSum, 0, CELLS * CELLS );
+        System.arraycopy( cellY, 0, ySum, 0, CELLS * CELLS );
+        System.arraycopy( cellCount, 0, count, 0, CELLS * CELLS );
+        part.theta = theta;
+        part.own = first[ d + 1 ] - first[d];
+        part.ghosts = ghostCount[d];
+        for( int k = first[d]; k < first[ d + 1 ]; k++ )
+            takeOff( d, sorted[k] );
+        for( int k = 0; k < part.ghosts; k++ )
+            takeOff( d, ghostOf[d][k] );
+        //a cell is empty once its last particle is taken off, whatever rounding is left of its mass
+        part.cells = 0;
+        for( int cell = 0; cell < CELLS * CELLS; cell++ )
+            if( count[cell] > 0 && mass[cell] > 0 )
+                part.cells++;
+        part.ensureCapacity( part.own + part.ghosts + part.cells );
+        int slot = 0;
+        for( int k = first[d]; k < first[ d + 1 ]; k++ )
+            copyParticle( part, slot++, sorted[k] );
+        for( int k = 0; k < part.ghosts; k++ )
+            copyParticle( part, slot++, ghostOf[d][k] );
+        for( int cell = 0; cell < CELLS * CELLS; cell++ )
+            if( count[cell] > 0 && mass[cell] > 0 ) {
+                part.mass[slot] = mass[cell];
+                part.xPos[slot] = gridX + cell % CELLS * cellSize + xSum[cell] / mass[cell];
+                part.yPos[slot] = gridY + cell / CELLS * cellSize + ySum[cell] / mass[cell];
+                slot++;
+            }
+    }
+    
+    //takes a particle off the copy of the grid of a domain
+    private void takeOff( int d, int i ) {
+        int cell = cellOf[i];
+        double mass = store.mass[i];
+        domainMass[d][cell] -= mass;
+        domainX[d][cell] -= mass * ( store.xPos[i] - gridX - cell % CELLS * cellSize );
+        domainY[d][cell] -= mass * ( store.yPos[i] - gridY - cell / CELLS * cellSize );
+        domainCount[d][cell]--;
+    }
+    
+    //copies a particle of the store into a slot of a domain
+    private void copyParticle( DomainWorker part, int slot, int i ) {
+        part.xPos[slot] = store.xPos[i];
+        part.yPos[slot] = store.yPos[i];
+        part.mass[slot] = store.mass[i];
+        part.xVeloc[slot] = store.xVeloc[i];
+        part.yVeloc[slot] = store.yVeloc[i];
+        part.radius[slot] = store.radius[i];
+        part.invSpring[slot] = invSpring[i];
+        part.drag[slot] = drag[i];
+    }
+    
+    //closes the workers and the connections being opened to them
+    private void closeWorkers() {
+        if( workers != null )
+            workers.close();
+        workers = null;
+    }
+    
+    //creates a report of the particles, ghosts, cells and cost of each domain
+    private String domainReport() {
+        StringBuilder report = new StringBuilder( String.format( "Ticks: %d\nWorkers: %s", ticks,
+                failed ? "failed, calculating in this process" : workers == null ? "not started" :
+                workers.connected ? workers.count + " connected" : "connecting, calculating in this process" ) );
+        DomainWorker[] current = parts;
+        double[] costs = cost;
+        for( int d = 0; d < current.length; d++ )
+            report.append( String.format( "\nDomain %d: %d particles, %d ghosts, %d cells, %.1f ns per particle", d, current[d].own, current[d].ghosts,
+                    current[d].cells, d < costs.length ? costs[d] : 0 ) );
+        return report.toString();
+    }
+    
+    
+    //worker processes of the domains and the connections to them, opened on a thread of their own so that neither the simulation nor
+    //the window waits for the workers to start
+    private static final class Workers implements Runnable {
+        private final int count, port;
+        private final boolean spawn;
+        private final Process[] processes;
+        private final Socket[] links;
+        private final DataInputStream[] inputs;
+        private final DataOutputStream[] outputs;
+        private ServerSocket server;
+        private boolean closed;
+        //whether every worker connected, or the connecting failed
+        private volatile boolean connected, failed;
+        
+        private Workers( int count, int port, boolean spawn ) {
+            this.count = count;
+            this.port = port;
+            this.spawn = spawn;
+            processes = new Process[count];
+            links = new Socket[count];
+            inputs = new DataInputStream[count];
+            outputs = new DataOutputStream[count];
+            server = null;
+            closed = false;
+            connected = false;
+            failed = false;
+        }
+        
+        //starts connecting a worker for every domain
+        private static Workers connect( int count, int port, boolean spawn ) {
+            var workers = new Workers( count, port, spawn );
+            var thread = new Thread( workers, "Simulator-Distributed-Connect" );
+            thread.setDaemon( true );
+            thread.start();
+            return workers;
+        }
+        
+        //starts a worker process for every domain, or waits for workers started by hand, and connects to them
+        @Override
+        public void run() {
+            try {
+                open();
+                connected = true;
+                Logger.logThreadMessage( "Connected to " + count + " domain workers" );
+            } catch( IOException e ) {
+                synchronized( this ) {
+                    if( !closed )
+                        Logger.logThrowable( e, "Could not start the domain workers, calculating the domains in this process" );
+                }
+                failed = true;
+            } finally {
+                synchronized( this ) {
+                    closeQuietly( server );
+                }
+            }
+        }
+        
+        //closes the connections, which ends the workers, and waits for the processes started here
+        private synchronized void close() {
+            closed = true;
+            connected = false;
+            closeQuietly( server );
+            for( Socket link : links )
+                closeQuietly( link );
+            for( Process process : processes )
+                try {
+                    if( process != null && !process.waitFor( 5, TimeUnit.SECONDS ) )
+                        process.destroyForcibly();
+                } catch( InterruptedException e ) {
+                    process.destroyForcibly();
+                }
+        }
+        
+        //opens the server socket, starts the processes and accepts a connection from every worker, giving up once closed
+        private void open() throws IOException {
+            ServerSocket server;
+            synchronized( this ) {
+                checkOpen();
+                //local workers only need the loopback address, workers on other machines need every address
+                server = this.server = new ServerSocket( port, count, spawn ? InetAddress.getLoopbackAddress() : null );
+            }
+            server.setSoTimeout( CONNECT_TIME );
+            String address = "localhost:" + server.getLocalPort();
+            if( spawn ) {
+                String java = System.getProperty( "java.home" ) + File.separator + "bin" + File.separator + "java";
+                //the cores are shared out between the workers so their thread pools do not crowd each other
+                int cores = Math.max( Runtime.getRuntime().availableProcessors() / count, 1 );
+                var builder = new ProcessBuilder( java, "-Djava.awt.headless=true", "-XX:ActiveProcessorCount=" + cores, "-cp",
+                        System.getProperty( "java.class.path" ), SpaceSim.class.getName(), "--domain-worker", address ).inheritIO();
+                for( int d = 0; d < count; d++ )
+                    synchronized( this ) {
+                        checkOpen();
+                        processes[d] = builder.start();
+                    }
+            } else
+                Logger.logMessage( "Waiting for " + count + " domain workers started with --domain-worker host:" + server.getLocalPort() );
+            for( int d = 0; d < count; d++ ) {
+                Socket link = server.accept();
+                synchronized( this ) {
+                    links[d] = link;
+                    checkOpen();
+                    link.setTcpNoDelay( true );
+                    link.setSoTimeout( ANSWER_TIME );
+                    inputs[d] = new DataInputStream( new BufferedInputStream( link.getInputStream(), BUFFER_SIZE ) );
+                    outputs[d] = new DataOutputStream( new BufferedOutputStream( link.getOutputStream(), BUFFER_SIZE ) );
+                }
+            }
+        }
+        
+        //throws once the workers were closed, so a connection closed while opening stops there
+        private void checkOpen() throws IOException {
+            if( closed ) {
+                //a link accepted after the close still needs closing
+                for( Socket link : links )
+                    closeQuietly( link );
+                throw new IOException( "Domain workers closed while connecting" );
+            }
+        }
+        
+        //closes a socket or server socket that may be null
+        private static void closeQuietly( Closeable closeable ) {
+            try {
+                if( closeable != null )
+                    closeable.close();
+            } catch( IOException e ) {
+                Logger.logThrowable( e );
+            }
+        }
+    }
+}
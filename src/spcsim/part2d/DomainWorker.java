@@ -0,0 +1,259 @@
+package spcsim.part2d;
+
+/* Author: Kent Fukuda
+ * Description: One domain of a distributed Particles2D simulation, run in its own process and fed over a socket by the Distributed environment
+ * Created: 10-16-26
+ * Status: utility class, finished
+ * Dependencies: AxiomObject2D, QuadTree, WorkerPool, Logger
+ * Licensed under GNU v3, see src/spcsim/SpaceSim.java for more details
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import spcsim.base.Logger;
+import spcsim.impl.QuadTree;
+import spcsim.impl.WorkerPool;
+
+public final class DomainWorker {
+    
+    //number of particles handled by each task
+    private static final int BLOCK = 256;
+    //bytes of the buffers doubles are moved through and of the socket streams
+    private static final int BUFFER_SIZE = 1 << 16;
+    
+    //particles of the domain, then ghost particles of other domains near it, then far cells of other domains as point masses
+    //cells have no velocity, radius, spring or drag
+    int own, ghosts, cells;
+    double theta;
+    double[] xPos, yPos, mass, xVeloc, yVeloc, radius, invSpring, drag;
+    //accelerations of the particles of the domain
+    double[] xAccel, yAccel;
+    private final QuadTree tree;
+    private int[] order;
+    //pairs of touching particles found during a force calculation
+    private final Object contactLock;
+    private long[] contacts;
+    private int contactCount;
+    private final ByteBuffer buffer;
+    
+    //constructor
+    DomainWorker() {
+        xPos = yPos = mass = xVeloc = yVeloc = radius = invSpring = drag = xAccel = yAccel = new double[0];
+        tree = new QuadTree( 8 );
+        order = new int[0];
+        contactLock = new Object();
+        contacts = new long[16];
+        contactCount = 0;
+        buffer = ByteBuffer.allocate( BUFFER_SIZE );
+    }
+    
+    
+    //connects to the environment at host:port and calculates forces for it until it disconnects
+    //returns whether the worker ended because the environment closed the connection
+    public static boolean run( String[] args ) {
+        int split = args.length == 1 ? args[0].lastIndexOf( ':' ) : -1;
+        int port;
+        try {
+            port = Integer.parseInt( args[0].substring( split + 1 ) );
+        } catch( NumberFormatException|ArrayIndexOutOfBoundsException e ) {
+            Logger.logError( "Domain workers are started with --domain-worker host:port" );
+            return false;
+        }
+        try( Socket socket = new Socket( split > 0 ? args[0].substring( 0, split ) : "localhost", port ) ) {
+            socket.setTcpNoDelay( true );
+            var in = new DataInputStream( new BufferedInputStream( socket.getInputStream(), BUFFER_SIZE ) );
+            var out = new DataOutputStream( new BufferedOutputStream( socket.getOutputStream(), BUFFER_SIZE ) );
+            var worker = new DomainWorker();
+            Logger.logMessage( "Domain worker connected to " + args[0] );
+            while( worker.readRequest( in ) ) {
+                long start = System.nanoTime();
+                worker.forces();
+                worker.writeResult( out, System.nanoTime() - start );
+            }
+            Logger.logMessage( "Domain worker disconnected" );
+            return true;
+        } catch( IOException e ) {
+            Logger.logThrowable( e, "Domain worker lost its environment" );
+            return false;
+        }
+    }
+    
+    
+    //package private methods shared with the environment
+    //makes room for a number of particles and cells
+    void ensureCapacity( int count ) {
+        if( xPos.length >= count )
+            return;
+        int capacity = Math.max( count, xPos.length * 2 );
+        xPos = new double[capacity];
+        yPos = new double[capacity];
+        mass = new double[capacity];
+        xVeloc = new double[capacity];
+        yVeloc = new double[capacity];
+        radius = new double[capacity];
+        invSpring = new double[capacity];
+        drag = new double[capacity];
+        xAccel = new double[capacity];
+        yAccel = new double[capacity];
+    }
+    
+    //calculates the gravity and contact forces on the particles of the domain
+    void forces() {
+        int size = own + ghosts, total = size + cells;
+        Arrays.fill( xAccel, 0, own, 0 );
+        Arrays.fill( yAccel, 0, own, 0 );
+        Arrays.fill( radius, size, total, 0 );
+        if( own == 0 )
+            return;
+        if( order.length < total )
+            order = new int[ Math.max( total, order.length * 2 ) ];
+        tree.update( total, xPos, yPos, mass, radius );
+        tree.bodyOrder( order );
+        WorkerPool.shared().run( ( total + BLOCK - 1 ) / BLOCK, block -> {
+            double[] accel = new double[2];
+            for( int k = block * BLOCK; k < Math.min( block * BLOCK + BLOCK, total ); k++ ) {
+                int i = order[k];
+                if( i >= own )
+                    continue;
+                tree.gravity( i, theta, -1, accel, j -> addContact( i, j ) );
+                xAccel[i] += accel[0];
+                yAccel[i] += accel[1];
+            }
+        } );
+        //touching pairs get the full contact force afterwards, sorted so the order does not depend on the threads
+        Arrays.sort( contacts, 0, contactCount );
+        for( int c = 0; c < contactCount; c++ ) {
+            int i = (int)( contacts[c] >>> 32 ), j = (int)contacts[c];
+            if( j < size )
+                contactForce( i, j );
+            else
+                cellGravity( i, j );
+        }
+        contactCount = 0;
+    }
+    
+    //sends the particles and cells to a worker
+    void writeRequest( DataOutputStream out ) throws IOException {
+        int size = own + ghosts, total = size + cells;
+        out.writeInt( own );
+        out.writeInt( ghosts );
+        out.writeInt( cells );
+        out.writeDouble( theta );
+        writeDoubles( out, xPos, total );
+        writeDoubles( out, yPos, total );
+        writeDoubles( out, mass, total );
+        writeDoubles( out, xVeloc, size );
+        writeDoubles( out, yVeloc, size );
+        writeDoubles( out, radius, size );
+        writeDoubles( out, invSpring, size );
+        writeDoubles( out, drag, size );
+        out.flush();
+    }
+    
+    //receives the particles and cells from the environment, returns false once the environment closed the connection
+    boolean readRequest( DataInputStream in ) throws IOException {
+        try {
+            own = in.readInt();
+        } catch( EOFException e ) {
+            return false;
+        }
+        ghosts = in.readInt();
+        cells = in.readInt();
+        theta = in.readDouble();
+        int size = own + ghosts, total = size + cells;
+        ensureCapacity( total );
+        readDoubles( in, xPos, total );
+        readDoubles( in, yPos, total );
+        readDoubles( in, mass, total );
+        readDoubles( in, xVeloc, size );
+        readDoubles( in, yVeloc, size );
+        readDoubles( in, radius, size );
+        readDoubles( in, invSpring, size );
+        readDoubles( in, drag, size );
+        return true;
+    }
+    
+    //sends the accelerations of the particles of the domain and the nanoseconds spent on them back to the environment
+    void writeResult( DataOutputStream out, long busy ) throws IOException {
+        writeDoubles( out, xAccel, own );
+        writeDoubles( out, yAccel, own );
+        out.writeLong( busy );
+        out.flush();
+    }
+    
+    //receives the accelerations from a worker and returns the nanoseconds it spent on them
+    long readResult( DataInputStream in ) throws IOException {
+        readDoubles( in, xAccel, own );
+        readDoubles( in, yAccel, own );
+        return in.readLong();
+    }
+    
+    
+    //private utility methods
+    //records a touching pair, called from the force tasks
+    private void addContact( int index1, int index2 ) {
+        synchronized( contactLock ) {
+            if( contactCount == contacts.length )
+                contacts = Arrays.copyOf( contacts, contactCount * 2 );
+            contacts[contactCount++] = (long)index1 << 32 | index2;
+        }
+    }
+    
+    //adds the contact force between a particle of the domain and a touching particle, the same force AxiomObject2D.interact applies
+    //ghost particles are moved by their own domain, so only particles of this one are pushed
+    private void contactForce( int i, int j ) {
+        double xDiff = xPos[i] - xPos[j];
+        double yDiff = yPos[i] - yPos[j];
+        double dist = Math.sqrt( xDiff * xDiff + yDiff * yDiff );
+        double totRad = radius[i] + radius[j];
+        double force = AxiomObject2D.contactForce( xDiff, yDiff, dist, totRad, xVeloc[j] - xVeloc[i], yVeloc[j] - yVeloc[i], 
+                invSpring[i] + invSpring[j], drag[i] * drag[j], mass[i] * mass[j] );
+        xAccel[i] += force * xDiff * mass[j];
+        yAccel[i] += force * yDiff * mass[j];
+        if( j < own ) {
+            xAccel[j] -= force * xDiff * mass[i];
+            yAccel[j] -= force * yDiff * mass[i];
+        }
+    }
+    
+    //adds the gravity of a cell whose center of mass lies inside a particle, which the tree reports as touching
+    private void cellGravity( int i, int cell ) {
+        double xDiff = xPos[i] - xPos[cell];
+        double yDiff = yPos[i] - yPos[cell];
+        double distSq = xDiff * xDiff + yDiff * yDiff;
+        if( distSq == 0 )
+            return;
+        double force = -mass[cell] / ( distSq * Math.sqrt( distSq ) );
+        xAccel[i] += force * xDiff;
+        yAccel[i] += force * yDiff;
+    }
+    
+    //writes the first count values of an array through the buffer
+    private void writeDoubles( DataOutputStream out, double[] values, int count ) throws IOException {
+        for( int start = 0; start < count; ) {
+            int length = Math.min( count - start, BUFFER_SIZE / Double.BYTES );
+            buffer.clear();
+            buffer.asDoubleBuffer().put( values, start, length );
+            out.write( buffer.array(), 0, length * Double.BYTES );
+            start += length;
+        }
+    }
+    
+    //reads the first count values of an array through the buffer
+    private void readDoubles( DataInputStream in, double[] values, int count ) throws IOException {
+        for( int start = 0; start < count; ) {
+            int length = Math.min( count - start, BUFFER_SIZE / Double.BYTES );
+            in.readFully( buffer.array(), 0, length * Double.BYTES );
+            buffer.clear();
+            buffer.asDoubleBuffer().get( values, start, length );
+            start += length;
+        }
+    }
+}
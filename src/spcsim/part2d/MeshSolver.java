@@ -0,0 +1,243 @@
+package spcsim.part2d;
+
+/* Author: Kent Fukuda
+ * Description: Particle mesh solver that calculates long range gravity of particles with FFT convolution on a grid
+ * Created: 10-16-26
+ * Status: utility class, finished
+ * Dependencies: none
+ * Licensed under GNU v3, see src/spcsim/SpaceSim.java for more details
+ */
+
+import java.util.Arrays;
+
+final class MeshSolver {
+    
+    //mass assignment schemes
+    static final int NGP = 0, CIC = 1, TSC = 2;
+    //average of 1/r over a unit cell, used for the potential of a cell on itself
+    private static final double SELF_POTENTIAL = 4 * Math.log( 1 + Math.sqrt( 2 ) );
+    //grid nodes kept free around the particles for the assignment and gradient stencils
+    private static final int BORDER = 3;
+    
+    //fourier transform of the unit width green's function
+    private double[] kernelReal, kernelImag;
+    private int kernelSize;
+    private double kernelSplit;
+    //work arrays
+    private double[] real, imag, potential, xField, yField;
+    //grid placement of the last solve
+    private double originX, originY, spacing;
+    
+    //constructor
+    MeshSolver() {
+        kernelSize = -1;
+        kernelSplit = Double.NaN;
+    }
+    
+    
+    //grid spacing of the last solve
+    double spacing() {
+        return spacing;
+    }
+    
+    //calculates the mesh accelerations of count bodies. gridSize must be a power of two
+    //when split is positive only the long range part erf( r / 2s ) / r of the potential is used, with s in grid cells
+    void solve( int count, double[] xPos, double[] yPos, double[] mass, int gridSize, int scheme, double split, double[] xAccel, double[] yAccel ) {
+        int padded = gridSize * 2;
+        if( kernelSize != gridSize || Double.compare( kernelSplit, split ) != 0 )
+            createKernel( gridSize, split );
+        //places the grid around the particles
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for( int i = 0; i < count; i++ ) {
+            minX = Math.min( minX, xPos[i] );
+            minY = Math.min( minY, yPos[i] );
+            maxX = Math.max( maxX, xPos[i] );
+            maxY = Math.max( maxY, yPos[i] );
+        }
+        spacing = Math.max( Math.max( maxX - minX, maxY - minY ), Double.MIN_NORMAL ) / ( gridSize - 2 * BORDER - 1 );
+        originX = ( minX + maxX ) / 2 - spacing * ( gridSize - 1 ) / 2;
+        originY = ( minY + maxY ) / 2 - spacing * ( gridSize - 1 ) / 2;
+        //assigns mass to the zero padded grid
+        Arrays.fill( real, 0 );
+        Arrays.fill( imag, 0 );
+        int[] node = new int[3];
+        double[] xWeight = new double[3], yWeight = new double[3];
+        for( int i = 0; i < count; i++ ) {
+            int width = weights( ( xPos[i] - originX ) / spacing, scheme, node, xWeight );
+            int xNode = node[0];
+            weights( ( yPos[i] - originY ) / spacing, scheme, node, yWeight );
+            int yNode = node[0];
+            for( int b = 0; b < width; b++ )
+                for( int a = 0; a < width; a++ )
+                    real[ ( yNode + b ) * padded + xNode + a ] += mass[i] * xWeight[a] * yWeight[b];
+        }
+        //convolves the mass with the green's function
+        fft2D( real, imag, padded, false );
+        for( int i = 0; i < real.length; i++ ) {
+            double re = real[i] * kernelReal[i] - imag[i] * kernelImag[i];
+            double im = real[i] * kernelImag[i] + imag[i] * kernelReal[i];
+            real[i] = re;
+            imag[i] = im;
+        }
+        fft2D( real, imag, padded, true );
+        double norm = 1.0 / ( padded * padded ) / spacing;
+        for( int y = 0; y < gridSize; y++ )
+            for( int x = 0; x < gridSize; x++ )
+                potential[ y * gridSize + x ] = real[ y * padded + x ] * norm;
+        //acceleration is the gradient of the potential, with fourth order differences
+        double diff = 1 / ( 12 * spacing );
+        for( int y = 2; y < gridSize - 2; y++ )
+            for( int x = 2; x < gridSize - 2; x++ ) {
+                int i = y * gridSize + x;
+                xField[i] = ( 8 * ( potential[i + 1] - potential[i - 1] ) - potential[i + 2] + potential[i - 2] ) * diff;
+                yField[i] = ( 8 * ( potential[i + gridSize] - potential[i - gridSize] ) - potential[i + 2 * gridSize] + potential[i - 2 * gridSize] ) * diff;
+            }
+        //interpolates the field back with the same weights
+        for( int i = 0; i < count; i++ ) {
+            int width = weights( ( xPos[i] - originX ) / spacing, scheme, node, xWeight );
+            int xNode = node[0];
+            weights( ( yPos[i] - originY ) / spacing, scheme, node, yWeight );
+            int yNode = node[0];
+            double ax = 0, ay = 0;
+            for( int b = 0; b < width; b++ )
+                for( int a = 0; a < width; a++ ) {
+                    int g = ( yNode + b ) * gridSize + xNode + a;
+                    double w = xWeight[a] * yWeight[b];
+                    ax += xField[g] * w;
+                    ay += yField[g] * w;
+                }
+            xAccel[i] = ax;
+            yAccel[i] = ay;
+        }
+    }
+    
+    
+    //static utility methods
+    //long range fraction of a pair force at distance r, with split radius s. the short range part is 1 minus this
+    static double longRangeFraction( double r, double s ) {
+        double u = r / ( 2 * s );
+        return erf( u ) - 2 / Math.sqrt( Math.PI ) * u * Math.exp( -u * u );
+    }
+    
+    //error function, accurate to about 1e-7
+    static double erf( double x ) {
+        double t = 1 / ( 1 + 0.3275911 * Math.abs( x ) );
+        double y = 1 - ( ( ( ( 1.061405429 * t - 1.453152027 ) * t + 1.421413741 ) * t - 0.284496736 ) * t + 0.254829592 ) * t * Math.exp( -x * x );
+        return x < 0 ? -y : y;
+    }
+    
+    
+    //private utility methods
+    //creates the transformed green's function for a grid size
+    private void createKernel( int gridSize, double split ) {
+        int padded = gridSize * 2;
+        kernelReal = new double[ padded * padded ];
+        kernelImag = new double[ padded * padded ];
+        for( int y = 0; y < padded; y++ )
+            for( int x = 0; x < padded; x++ ) {
+                int dx = x <= gridSize ? x : x - padded, dy = y <= gridSize ? y : y - padded;
+                double r = Math.sqrt( dx * dx + dy * dy );
+                double value;
+                if( split > 0 )
+                    value = r == 0 ? 1 / ( split * Math.sqrt( Math.PI ) ) : erf( r / ( 2 * split ) ) / r;
+                else
+                    value = r == 0 ? SELF_POTENTIAL : 1 / r;
+                kernelReal[ y * padded + x ] = value;
+            }
+        fft2D( kernelReal, kernelImag, padded, false );
+        real = new double[ padded * padded ];
+        imag = new double[ padded * padded ];
+        potential = new double[ gridSize * gridSize ];
+        xField = new double[ gridSize * gridSize ];
+        yField = new double[ gridSize * gridSize ];
+        kernelSize = gridSize;
+        kernelSplit = split;
+    }
+    
+    //calculates the first node and weights of a grid coordinate, returns the number of nodes
+    private static int weights( double u, int scheme, int[] node, double[] weight ) {
+        switch( scheme ) {
+            case NGP :
+                node[0] = (int)Math.round( u );
+                weight[0] = 1;
+                return 1;
+            case TSC :
+                int center = (int)Math.round( u );
+                double d = u - center;
+                node[0] = center - 1;
+                weight[0] = 0.5 * ( 0.5 - d ) * ( 0.5 - d );
+                weight[1] = 0.75 - d * d;
+                weight[2] = 0.5 * ( 0.5 + d ) * ( 0.5 + d );
+                return 3;
+            default :
+                int low = (int)Math.floor( u );
+                double f = u - low;
+                node[0] = low;
+                weight[0] = 1 - f;
+                weight[1] = f;
+                return 2;
+        }
+    }
+    
+    //in place 2D fast fourier transform of a square power of two grid
+    private static void fft2D( double[] real, double[] imag, int size, boolean inverse ) {
+        double[] rowReal = new double[size], rowImag = new double[size];
+        for( int y = 0; y < size; y++ ) {
+            System.arraycopy( real, y * size, rowReal, 0, size );
+            System.arraycopy( imag, y * size, rowImag, 0, size );
+            fft( rowReal, rowImag, inverse );
+            System.arraycopy( rowReal, 0, real, y * size, size );
+            System.arraycopy( rowImag, 0, imag, y * size, size );
+        }
+        for( int x = 0; x < size; x++ ) {
+            for( int y = 0; y < size; y++ ) {
+                rowReal[y] = real[ y * size + x ];
+                rowImag[y] = imag[ y * size + x ];
+            }
+            fft( rowReal, rowImag, inverse );
+            for( int y = 0; y < size; y++ ) {
+                real[ y * size + x ] = rowReal[y];
+                imag[ y * size + x ] = rowImag[y];
+            }
+        }
+    }
+    
+    //in place iterative radix 2 fast fourier transform, unnormalized
+    private static void fft( double[] real, double[] imag, boolean inverse ) {
+        int n = real.length;
+        for( int i = 1, j = 0; i < n; i++ ) {
+            int bit = n >> 1;
+            for( ; ( j & bit ) != 0; bit >>= 1 )
+                j ^= bit;
+            j ^= bit;
+            if( i < j ) {
+                double t = real[i];
+                real[i] = real[j];
+                real[j] = t;
+                t = imag[i];
+                imag[i] = imag[j];
+                imag[j] = t;
+            }
+        }
+        for( int len = 2; len <= n; len <<= 1 ) {
+            double angle = ( inverse ? 2 : -2 ) * Math.PI / len;
+            double wReal = Math.cos( angle ), wImag = Math.sin( angle );
+            for( int i = 0; i < n; i += len ) {
+                double uReal = 1, uImag = 0;
+                for( int j = 0; j < len / 2; j++ ) {
+                    int a = i + j, b = a + len / 2;
+                    double vReal = real[b] * uReal - imag[b] * uImag;
+                    double vImag = real[b] * uImag + imag[b] * uReal;
+                    real[b] = real[a] - vReal;
+                    imag[b] = imag[a] - vImag;
+                    real[a] += vReal;
+                    imag[a] += vImag;
+                    double t = uReal * wReal - uImag * wImag;
+                    uImag = uReal * wImag + uImag * wReal;
+                    uReal = t;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package spcsim.part2d;
+
+/* Author: Kent Fukuda
+ * Description: Implementation of the Particles2D simulation environment that calculates contact forces from verlet neighbor lists and gravity with a far field solver
+ * Created: 10-16-26
+ * Status: environment class, finished
+ * Dependencies: SimObject, Particles2D, AxiomObject2D, MeshSolver, QuadTree, VerletList, Logger
+ * Licensed under GNU v3, see src/spcsim/SpaceSim.java for more details
+ */
+
+import java.lang.invoke.MethodHandles;
+import javax.swing.JOptionPane;
+import spcsim.impl.MainFrame;
+import spcsim.impl.QuadTree;
+import spcsim.impl.VerletList;
+import spcsim.base.EditPane;
+import spcsim.base.Logger;
+import spcsim.base.SimObject;
+
+public final class NeighborList extends Particles2D {
+    //serialversionuid
+    public static final long serialVersionUID = SimObject.registerParticleClass( MethodHandles.lookup(), "PTZDNL" );
+    //solvers for the gravity between particles that do not touch
+    private static final int NO_GRAVITY = 0, TREE_GRAVITY = 1, MESH_GRAVITY = 2;
+    //number of particles handled by each task
+    private static final int BLOCK = 256;
+    //split radius of the mesh in grid cells, and the distance in split radii past which the short range part of gravity is neglected
+    private static final double SPLIT_RADIUS = 1.25, CUTOFF = 6;
+    
+    private double skin, theta;
+    private int farField, gridSize;
+    private transient final VerletList neighbors;
+    private transient final QuadTree tree;
+    private transient final MeshSolver solver;
+    private transient int[] order;
+    //spring and drag of every particle, gathered each tick since they can be edited without moving the particle
+    private transient double[] invSpring, drag;
+    //list rebuilds, far field tree rebuilds and ticks since the last report, and a copy of them with the list entries and particle count
+    //published at the end of every tick for the report to read
+    private transient long rebuilds, treeRebuilds, ticks;
+    private transient volatile long[] shown;
+    //set by the report for the simulation thread to clear the counters at the start of its next tick
+    private transient volatile boolean resetCounters;
+    
+    //private constructor
+    private NeighborList() {
+        skin = 0.5;
+        theta = 0.5;
+        farField = TREE_GRAVITY;
+        gridSize = 256;
+        reorderInterval = 64;
+        neighbors = new VerletList();
+        tree = new QuadTree( 8 );
+        solver = new MeshSolver();
+        order = new int[0];
+        invSpring = drag = new double[0];
+        shown = new long[5];
+        resetCounters = false;
+    }
+    
+    //overridden gui method to add skin and far field settings
+    @Override
+    protected void generateGUI( EditPane editPane, MainFrame application ) {
+        super.generateGUI( editPane, application );
+        super.generateIntegratorGUI( editPane );
+        super.generateReorderGUI( editPane );
+        editPane.addValueMenuItem( EditPane.CONTROL_TYPE, "Neighbor Skin", "Set Neighbor Skin", () -> skin, val -> {
+                if( val < 0 )
+                    throw new IllegalArgumentException( "Skin must not be negative" );
+                skin = val;
+            } );
+        editPane.addMenuItem( EditPane.CONTROL_TYPE, "No Far Field", a -> farField = NO_GRAVITY );
+        editPane.addMenuItem( EditPane.CONTROL_TYPE, "Tree Far Field", a -> farField = TREE_GRAVITY );
+        editPane.addMenuItem( EditPane.CONTROL_TYPE, "Mesh Far Field", a -> farField = MESH_GRAVITY );
+        editPane.addValueMenuItem( EditPane.CONTROL_TYPE, "Opening Angle", "Set Opening Angle", () -> theta, val -> {
+                if( val < 0 )
+                    throw new IllegalArgumentException( "Opening angle must not be negative" );
+                theta = val;
+            } );
+        editPane.addValueMenuItem( EditPane.CONTROL_TYPE, "Grid Resolution", "Set Grid Resolution", () -> gridSize, val -> {
+                if( val < 16 || val > 2048 )
+                    throw new IllegalArgumentException( "Grid resolution must be between 16 and 2048" );
+                gridSize = Integer.highestOneBit( (int)val );
+            } );
+        editPane.addMenuItem( EditPane.CONTROL_TYPE, "Neighbor Report", a -> {
+            String report = neighborReport();
+            Logger.logMessage( report );
+            JOptionPane.showMessageDialog( null, report, "Neighbor Report", JOptionPane.INFORMATION_MESSAGE );
+        } );
+    }
+    
+    //implemented simulation method
+    @Override
+    protected void simulate() {
+        if( resetCounters ) {
+            resetCounters = false;
+            rebuilds = treeRebuilds = ticks = 0;
+        }
+        store.load( particles );
+        int size = store.size();
+        if( invSpring.length < size ) {
+            invSpring = new double[ store.xPos.length ];
+            drag = new double[ store.xPos.length ];
+        }
+        for( int i = 0; i < size; i++ ) {
+            AxiomObject2D obj = particles.get( i );
+            invSpring[i] = obj.invSpring;
+            drag[i] = obj.drag;
+        }
+        //particles added, removed or resized break the list even if they did not move
+        if( !store.unchanged() )
+            neighbors.invalidate();
+        super.integrate( this::calculateForces );
+        store.save( particles );
+        ticks++;
+        shown = new long[] { ticks, rebuilds, treeRebuilds, neighbors.entries(), store.size() };
+    }
+    
+    
+    //private utility methods
+    //calculates the far field gravity and the contact forces of the neighbor list on every particle of the store
+    private void calculateForces() {
+        int size = store.size();
+        if( size == 0 )
+            return;
+        //the mesh only gives the long range part of gravity, so the list also has to reach the pairs that need the short range part
+        if( farField == MESH_GRAVITY )
+            solver.solve( size, store.xPos, store.yPos, store.mass, gridSize, MeshSolver.CIC, SPLIT_RADIUS, store.xAccel, store.yAccel );
+        double split = farField == MESH_GRAVITY ? SPLIT_RADIUS * solver.spacing() : 0, range = CUTOFF * split;
+        if( neighbors.update( store, range, skin ) )
+            rebuilds++;
+        if( farField == TREE_GRAVITY ) {
+            if( order.length < size )
+                order = new int[ Math.max( size, order.length * 2 ) ];
+            if( tree.update( size, store.xPos, store.yPos, store.mass, store.radius ) )
+                treeRebuilds++;
+            tree.bodyOrder( order );
+            super.parallelFor( ( size + BLOCK - 1 ) / BLOCK, block -> {
+                double[] accel = new double[2];
+                for( int k = block * BLOCK; k < Math.min( block * BLOCK + BLOCK, size ); k++ ) {
+                    int i = order[k];
+                    tree.gravity( i, theta, -1, accel, null );
+                    store.xAccel[i] += accel[0];
+                    store.yAccel[i] += accel[1];
+                }
+            } );
+        }
+        //each particle sums its own side of its pairs so no two tasks write the same particle
+        super.parallelFor( ( size + BLOCK - 1 ) / BLOCK, block -> {
+            for( int i = block * BLOCK; i < Math.min( block * BLOCK + BLOCK, size ); i++ )
+                contactForce( i, split, range );
+        } );
+    }
+    
+    //adds the contact forces on a particle from the touching particles of its neighbor list, the same force AxiomObject2D.interact applies
+    //with a mesh split radius the pairs within range also get the short range part of gravity, as AxiomObject2D.interactShort does
+    private void contactForce( int i, double split, double range ) {
+        double[] xPos = store.xPos, yPos = store.yPos, xVeloc = store.xVeloc, yVeloc = store.yVeloc, mass = store.mass, radius = store.radius;
+        double ax = 0, ay = 0;
+        for( int n = neighbors.start[i]; n < neighbors.start[i + 1]; n++ ) {
+            int j = neighbors.neighbors[n];
+            double xDiff = xPos[i] - xPos[j];
+            double yDiff = yPos[i] - yPos[j];
+            double dist = Math.sqrt( xDiff * xDiff + yDiff * yDiff );
+            double totRad = radius[i] + radius[j];
+            double force;
+            if( dist <= totRad ) {
+                force = AxiomObject2D.contactForce( xDiff, yDiff, dist, totRad, xVeloc[j] - xVeloc[i], yVeloc[j] - yVeloc[i], 
+                        invSpring[i] + invSpring[j], drag[i] * drag[j], mass[i] * mass[j] );
+            } else if( dist < range ) {
+                force = -1 / ( dist * dist * dist );
+            } else {
+                continue;
+            }
+            //removes the part of gravity already applied by the mesh
+            if( split > 0 )
+                force += MeshSolver.longRangeFraction( dist, split ) / ( dist * dist * dist );
+            ax += force * xDiff * mass[j];
+            ay += force * yDiff * mass[j];
+        }
+        store.xAccel[i] += ax;
+        store.yAccel[i] += ay;
+    }
+    
+    //creates a report of the list size and how often it and the tree were rebuilt from the last published counters and has them reset
+    private String neighborReport() {
+        long[] counters = shown;
+        String report = String.format( "Ticks: %d\nList rebuilds: %d\nTree rebuilds: %d\nNeighbors per particle: %.2f", 
+                counters[0], counters[1], counters[2], counters[4] == 0 ? 0 : (double)counters[3] / counters[4] );
+        resetCounters = true;
+        return report;
+    }
+}
@@ -0,0 +1,178 @@
+package spcsim.part2d;
+
+/* Author: Kent Fukuda
+ * Description: Implementation of the Particles2D simulation environment that calculates contacts and near gravity exactly and far gravity on a mesh
+ * Created: 10-16-26
+ * Status: environment class, finished
+ * Dependencies: SimObject, Particles2D, AxiomObject2D, MeshSolver, Logger
+ * Licensed under GNU v3, see src/spcsim/SpaceSim.java for more details
+ */
+
+import java.lang.invoke.MethodHandles;
+import java.util.Arrays;
+import javax.swing.JOptionPane;
+import spcsim.impl.MainFrame;
+import spcsim.base.EditPane;
+import spcsim.base.Logger;
+import spcsim.base.SimObject;
+
+public final class P3M extends Particles2D {
+    //serialversionuid
+    public static final long serialVersionUID = SimObject.registerParticleClass( MethodHandles.lookup(), "PTZDPP" );
+    //distance in split radii past which the short range part of gravity is neglected
+    private static final double CUTOFF = 6;
+    
+    private int gridSize, depositScheme;
+    private double splitRadius;
+    private transient final MeshSolver solver;
+    private transient int[] sorted, cellStart;
+    //time spent in each part since the last report, and a copy of them published at the end of every tick for the report to read
+    private transient long meshTime, pairTime, ticks;
+    private transient volatile long[] shown;
+    //set by the report for the simulation thread to clear the counters at the start of its next tick
+    private transient volatile boolean resetCounters;
+    
+    //private constructor
+    private P3M() {
+        gridSize = 128;
+        depositScheme = MeshSolver.TSC;
+        splitRadius = 1.25;
+        solver = new MeshSolver();
+        sorted = cellStart = new int[0];
+        shown = new long[3];
+        resetCounters = false;
+    }
+    
+    //overridden gui method to add grid and split settings
+    @Override
+    protected void generateGUI( EditPane editPane, MainFrame application ) {
+        super.generateGUI( editPane, application );
+        super.generateIntegratorGUI( editPane );
+        editPane.addValueMenuItem( EditPane.CONTROL_TYPE, "Grid Resolution", "Set Grid Resolution", () -> gridSize, val -> {
+                if( val < 16 || val > 2048 )
+                    throw new IllegalArgumentException( "Grid resolution must be between 16 and 2048" );
+                gridSize = Integer.highestOneBit( (int)val );
+            } );
+        editPane.addValueMenuItem( EditPane.CONTROL_TYPE, "Split Radius", "Set Split Radius (grid cells)", () -> splitRadius, val -> {
+                if( val <= 0 )
+                    throw new IllegalArgumentException( "Split radius must be larger than 0" );
+                splitRadius = val;
+            } );
+        editPane.addMenuItem( EditPane.CONTROL_TYPE, "NGP Deposit", a -> depositScheme = MeshSolver.NGP );
+        editPane.addMenuItem( EditPane.CONTROL_TYPE, "CIC Deposit", a -> depositScheme = MeshSolver.CIC );
+        editPane.addMenuItem( EditPane.CONTROL_TYPE, "TSC Deposit", a -> depositScheme = MeshSolver.TSC );
+        editPane.addMenuItem( EditPane.CONTROL_TYPE, "Timing Report", a -> {
+            String report = timingReport();
+            Logger.logMessage( report );
+            JOptionPane.showMessageDialog( null, report, "Timing Report", JOptionPane.INFORMATION_MESSAGE );
+        } );
+    }
+    
+    //implemented simulation method
+    @Override
+    protected void simulate() {
+        if( resetCounters ) {
+            resetCounters = false;
+            meshTime = pairTime = ticks = 0;
+        }
+        store.load( particles );
+        super.integrate( this::calculateForces );
+        store.save( particles );
+        ticks++;
+        shown = new long[] { meshTime, pairTime, ticks };
+    }
+    
+    
+    //private utility methods
+    //calculates mesh gravity and the exact short range forces on every particle of the store at its current position
+    private void calculateForces() {
+        int size = store.size();
+        if( size == 0 )
+            return;
+        if( sorted.length < size )
+            sorted = new int[ Math.max( size, sorted.length * 2 ) ];
+        double maxRadius = 0;
+        for( int i = 0; i < size; i++ )
+            maxRadius = Math.max( maxRadius, store.radius[i] );
+        //long range gravity on the mesh
+        long start = System.nanoTime();
+        solver.solve( size, store.xPos, store.yPos, store.mass, gridSize, depositScheme, splitRadius, store.xAccel, store.yAccel );
+        long middle = System.nanoTime();
+        //contacts and short range gravity between particles in neighboring cells, on the particles moved to the store
+        store.save( particles );
+        double split = splitRadius * solver.spacing();
+        double cellWidth = Math.max( CUTOFF * split, 2 * maxRadius );
+        interactShort( size, split, cellWidth );
+        for( int i = 0; i < size; i++ )
+            store.collect( i, particles.get( i ) );
+        long end = System.nanoTime();
+        meshTime += middle - start;
+        pairTime += end - middle;
+    }
+    
+    //interacts every pair closer than the cell width using a cell list
+    private void interactShort( int size, double split, double cellWidth ) {
+        double[] xPos = store.xPos, yPos = store.yPos;
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for( int i = 0; i < size; i++ ) {
+            minX = Math.min( minX, xPos[i] );
+            minY = Math.min( minY, yPos[i] );
+            maxX = Math.max( maxX, xPos[i] );
+            maxY = Math.max( maxY, yPos[i] );
+        }
+        int columns = Math.max( (int)Math.min( ( maxX - minX ) / cellWidth, 4096 ), 1 );
+        int rows = Math.max( (int)Math.min( ( maxY - minY ) / cellWidth, 4096 ), 1 );
+        double xWidth = Math.max( ( maxX - minX ) / columns, Double.MIN_NORMAL ) * 1.0001;
+        double yWidth = Math.max( ( maxY - minY ) / rows, Double.MIN_NORMAL ) * 1.0001;
+        int cells = columns * rows;
+        if( cellStart.length < cells + 1 )
+            cellStart = new int[ cells + 1 ];
+        Arrays.fill( cellStart, 0, cells + 1, 0 );
+        int[] cellOf = new int[size];
+        for( int i = 0; i < size; i++ ) {
+            cellOf[i] = Math.min( (int)( ( yPos[i] - minY ) / yWidth ), rows - 1 ) * columns + Math.min( (int)( ( xPos[i] - minX ) / xWidth ), columns - 1 );
+            cellStart[ cellOf[i] + 1 ]++;
+        }
+        for( int c = 0; c < cells; c++ )
+            cellStart[c + 1] += cellStart[c];
+        int[] fill = Arrays.copyOf( cellStart, cells );
+        for( int i = 0; i < size; i++ )
+            sorted[ fill[ cellOf[i] ]++ ] = i;
+        //visits each cell with itself and the four neighbors after it so every pair is visited once
+        for( int cy = 0; cy < rows; cy++ )
+            for( int cx = 0; cx < columns; cx++ ) {
+                int cell = cy * columns + cx;
+                for( int s = cellStart[cell]; s < cellStart[cell + 1]; s++ ) {
+                    AxiomObject2D obj = particles.get( sorted[s] );
+                    for( int t = s + 1; t < cellStart[cell + 1]; t++ )
+                        interactCutoff( obj, sorted[t], split, cellWidth );
+                    for( int n = 0; n < 4; n++ ) {
+                        int nx = cx + ( n == 0 ? 1 : n - 2 ), ny = cy + ( n == 0 ? 0 : 1 );
+                        if( nx < 0 || nx >= columns || ny >= rows )
+                            continue;
+                        int neighbor = ny * columns + nx;
+                        for( int t = cellStart[neighbor]; t < cellStart[neighbor + 1]; t++ )
+                            interactCutoff( obj, sorted[t], split, cellWidth );
+                    }
+                }
+            }
+    }
+    
+    //interacts a pair if it is within the cutoff distance
+    private void interactCutoff( AxiomObject2D obj, int index, double split, double cutoff ) {
+        double xDiff = obj.xPos - store.xPos[index], yDiff = obj.yPos - store.yPos[index];
+        if( xDiff * xDiff + yDiff * yDiff < cutoff * cutoff )
+            obj.interactShort( particles.get( index ), split );
+    }
+    
+    //creates a report of the time spent on each part from the last published counters and has them reset
+    private String timingReport() {
+        long[] counters = shown;
+        long mesh = counters[0], pair = counters[1], total = Math.max( mesh + pair, 1 ), count = Math.max( counters[2], 1 );
+        String report = String.format( "Ticks: %d\nMesh (long range): %.3f ms per tick, %.1f%%\nParticle pairs (short range): %.3f ms per tick, %.1f%%",
+                counters[2], mesh / 1e6 / count, 100.0 * mesh / total, pair / 1e6 / count, 100.0 * pair / total );
+        resetCounters = true;
+        return report;
+    }
+}
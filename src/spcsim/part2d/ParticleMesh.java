@@ -0,0 +1,60 @@
+package spcsim.part2d;
+
+/* Author: Kent Fukuda
+ * Description: Implementation of the Particles2D simulation environment that calculates gravity on a particle mesh
+ * Created: 10-16-26
+ * Status: environment class, finished
+ * Dependencies: SimObject, Particles2D, AxiomObject2D, MeshSolver
+ * Licensed under GNU v3, see src/spcsim/SpaceSim.java for more details
+ */
+
+import java.lang.invoke.MethodHandles;
+import spcsim.impl.MainFrame;
+import spcsim.base.EditPane;
+import spcsim.base.SimObject;
+
+public final class ParticleMesh extends Particles2D {
+    //serialversionuid
+    public static final long serialVersionUID = SimObject.registerParticleClass( MethodHandles.lookup(), "PTZDPM" );
+    
+    private int gridSize, depositScheme;
+    private transient final MeshSolver solver;
+    
+    //private constructor
+    private ParticleMesh() {
+        gridSize = 128;
+        depositScheme = MeshSolver.CIC;
+        solver = new MeshSolver();
+    }
+    
+    //overridden gui method to add grid settings
+    @Override
+    protected void generateGUI( EditPane editPane, MainFrame application ) {
+        super.generateGUI( editPane, application );
+        super.generateIntegratorGUI( editPane );
+        editPane.addValueMenuItem( EditPane.CONTROL_TYPE, "Grid Resolution", "Set Grid Resolution", () -> gridSize, val -> {
+                if( val < 16 || val > 2048 )
+                    throw new IllegalArgumentException( "Grid resolution must be between 16 and 2048" );
+                gridSize = Integer.highestOneBit( (int)val );
+            } );
+        editPane.addMenuItem( EditPane.CONTROL_TYPE, "NGP Deposit", a -> depositScheme = MeshSolver.NGP );
+        editPane.addMenuItem( EditPane.CONTROL_TYPE, "CIC Deposit", a -> depositScheme = MeshSolver.CIC );
+        editPane.addMenuItem( EditPane.CONTROL_TYPE, "TSC Deposit", a -> depositScheme = MeshSolver.TSC );
+    }
+    
+    //implemented simulation method
+    @Override
+    protected void simulate() {
+        store.load( particles );
+        super.integrate( this::calculateForces );
+        store.save( particles );
+    }
+    
+    
+    //private utility methods
+    //calculates the mesh gravity on every particle of the store at its current position
+    private void calculateForces() {
+        if( store.size() > 0 )
+            solver.solve( store.size(), store.xPos, store.yPos, store.mass, gridSize, depositScheme, 0, store.xAccel, store.yAccel );
+    }
+}
@@ -12,6 +12,7 @@ import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.event.MouseEvent;
 import java.lang.invoke.MethodHandles;
+import java.util.Arrays;
 import spcsim.base.EditPane;
 import spcsim.base.SimObject;
 import spcsim.impl.Env2D;
@@ -28,6 +29,10 @@ public abstract class Particles2D extends Env2D<AxiomObject2D> {
     private transient AxiomObject2D locked;
     private int count, clickMode;
     private double clickRadius, temperature, angularVeloc;
+    //pairs of touching particles recorded during a force calculation
+    private transient final Object contactLock;
+    private transient long[] contacts;
+    private transient int contactCount;
     
     //static initializzer
     static {
@@ -46,6 +51,9 @@ public abstract class Particles2D extends Env2D<AxiomObject2D> {
         clickRadius = 10;
         temperature = 0;
         angularVeloc = 0;
+        contactLock = new Object();
+        contacts = new long[16];
+        contactCount = 0;
     }
     
     //overridden methods
@@ -73,16 +81,11 @@ public abstract class Particles2D extends Env2D<AxiomObject2D> {
                                 } );
                                 break;
                             case REMOVE :
-                                super.queueOperation( list -> {
-                                    for( int i = 0 ; i < list.size(); i++ ) {
-                                        AxiomObject2D obj = list.get( i );
-                                        double xDiff = obj.xPos - mouseX;
-                                        double yDiff = obj.yPos - mouseY;
-                                        if( xDiff * xDiff + yDiff * yDiff < clickRadius * clickRadius ) {
-                                            list.remove( i-- );
-                                        }
-                                    }
-                                } );
+                                super.queueOperation( list -> list.removeIf( obj -> {
+                                    double xDiff = obj.xPos - mouseX;
+                                    double yDiff = obj.yPos - mouseY;
+                                    return xDiff * xDiff + yDiff * yDiff < clickRadius * clickRadius;
+                                } ) );
                                 break;
                             case LOCK :
                                 super.queueOperation( list -> {
@@ -102,14 +105,10 @@ public abstract class Particles2D extends Env2D<AxiomObject2D> {
                         }
                         break;
                     case MouseEvent.BUTTON3 :
-                        super.queueOperation( list -> {
-                            for( int i = 0; i < list.size(); i++ ) {
-                                var obj = list.get( i );
-                                double xDiff = obj.xPos - mouseX, yDiff = obj.yPos - mouseY;
-                                if( xDiff * xDiff + yDiff * yDiff < clickRadius * clickRadius )
-                                    list.remove( i-- );
-                            }
-                        } );
+                        super.queueOperation( list -> list.removeIf( obj -> {
+                            double xDiff = obj.xPos - mouseX, yDiff = obj.yPos - mouseY;
+                            return xDiff * xDiff + yDiff * yDiff < clickRadius * clickRadius;
+                        } ) );
                         break;
                     default :
                 }
@@ -180,6 +179,33 @@ public abstract class Particles2D extends Env2D<AxiomObject2D> {
         g.drawOval( lastPos.getX() - size / 2, lastPos.getY() - size / 2, size, size );
     }
     
+    //utility methods for implementations
+    //records a pair of touching particles of the store for applyContacts. safe to call from worker threads
+    protected final void addContact( int index1, int index2 ) {
+        synchronized( contactLock ) {
+            if( contactCount == contacts.length )
+                contacts = Arrays.copyOf( contacts, contactCount * 2 );
+            contacts[contactCount++] = (long)index1 << 32 | index2;
+        }
+    }
+    
+    //adds the full contact force of every recorded pair to the store and clears the pairs
+    //pairs are sorted first so the order does not depend on the backend or the threads
+    protected final void applyContacts() {
+        Arrays.sort( contacts, 0, contactCount );
+        for( int i = 0; i < contactCount; i++ ) {
+            int index1 = (int)( contacts[i] >>> 32 ), index2 = (int)contacts[i];
+            AxiomObject2D obj1 = particles.get( index1 ), obj2 = particles.get( index2 );
+            //the contact force needs the particles at the current positions and velocities of the store
+            store.save( index1, obj1 );
+            store.save( index2, obj2 );
+            obj1.interact( obj2 );
+            store.collect( index1, obj1 );
+            store.collect( index2, obj2 );
+        }
+        contactCount = 0;
+    }
+    
     //overridden for detecting editPane update events
     @Override
     public void parseString( String stringForm ) {
@@ -9,6 +9,8 @@ package spcsim.part2d;
  */
 
 import java.lang.invoke.MethodHandles;
+import spcsim.impl.MainFrame;
+import spcsim.base.EditPane;
 import spcsim.base.SimObject;
 
 public class Simple extends Particles2D {
@@ -18,15 +20,33 @@ public class Simple extends Particles2D {
     //private constructor
     private Simple() { }
     
+    //overridden gui method to add integrator settings
+    @Override
+    protected void generateGUI( EditPane editPane, MainFrame application ) {
+        super.generateGUI( editPane, application );
+        super.generateIntegratorGUI( editPane );
+    }
+    
     //implemented simulation method
     @Override
     protected void simulate() {
-        int size = particles.size();
+        store.load( particles );
+        super.integrate( this::calculateForces );
+        store.save( particles );
+    }
+    
+    
+    //private utility methods
+    //interacts every pair of particles at the current positions of the store
+    private void calculateForces() {
+        int size = store.size();
+        store.save( particles );
         for( int i = 0; i < size; i++ ) {
             AxiomObject2D obj = particles.get( i );
             for( int j = i + 1; j < size; j++ )
                 obj.interact( particles.get( j ) );
-            obj.update( timeStep );
         }
+        for( int i = 0; i < size; i++ )
+            store.collect( i, particles.get( i ) );
     }
 }